@@ -10,6 +10,8 @@ import com.github.nidorx.jtrade.core.Rate;
 import com.github.nidorx.jtrade.core.Strategy;
 import com.github.nidorx.jtrade.core.Tick;
 import com.github.nidorx.jtrade.core.exception.TradeException;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
@@ -66,6 +68,19 @@ public abstract class Broker {
      */
     public abstract String getName();
 
+    /**
+     * Obtém o diretório onde os candles dos instrumentos são persistidos, evitando re-consultas ao broker após o
+     * reinício.
+     *
+     * Por padrão a persistência é desabilitada, os brokers podem sobrescrever este método para habilitá-la. Ex.:
+     * <code>Paths.get(System.getProperty("java.io.tmpdir"), "ta-timeseries")</code>
+     *
+     * @return O diretório, ou null para não persistir os candles
+     */
+    protected Path getStorageDirectory() {
+        return null;
+    }
+
     /**
      * Instant Execution
      *
@@ -346,10 +361,15 @@ public abstract class Broker {
             if (instrument != null) {
 
                 // Informa ao instrumento sobre o novo tick
-                instrument.processTick(tick);
+                final List<Rate> closed = instrument.processTick(tick);
 
                 final Strategy strategy = getStrategy(tick.symbol);
                 if (strategy != null) {
+                    // Candles encerrados pelo tick, quando construídos pelo instrumento
+                    for (Rate rate : closed) {
+                        strategy.onRate(rate);
+                    }
+
                     // Informa à estratégia
                     strategy.processTick(tick);
                 }
@@ -394,7 +414,7 @@ public abstract class Broker {
         if (instrument != null) {
             throw new Exception("A instrument is already registered for the symbol:" + symbol);
         }
-        instruments.put(symbol, new InstrumentImpl(symbol, base, quote));
+        registerInstrument(new InstrumentImpl(symbol, base, quote));
     }
 
     protected final void createInstrument(String symbol, String base, String quote, int digits, double contractSize,
@@ -403,7 +423,37 @@ public abstract class Broker {
         if (instrument != null) {
             throw new Exception("A instrument is already registered for the symbol:" + symbol);
         }
-        instruments.put(symbol, new InstrumentImpl(symbol, base, quote, digits, contractSize, tickValue, bid, ask));
+        registerInstrument(new InstrumentImpl(symbol, base, quote, digits, contractSize, tickValue, bid, ask));
+    }
+
+    private void registerInstrument(InstrumentImpl instrument) throws IOException {
+        final Path directory = getStorageDirectory();
+        if (directory != null) {
+            // Carrega os candles salvos em disco
+            instrument.persistTo(directory, getName());
+        }
+        instruments.put(instrument.symbol, instrument);
+    }
+
+    /**
+     * Remove um instrumento deste Broker, sincronizando e fechando os arquivos de persistência dos seus candles
+     *
+     * @param symbol
+     */
+    protected final void removeInstrument(String symbol) {
+        final InstrumentImpl instrument = (InstrumentImpl) instruments.remove(symbol);
+        if (instrument != null) {
+            instrument.closeFiles();
+        }
+    }
+
+    /**
+     * Encerra o Broker, sincronizando e fechando os arquivos de persistência dos candles de todos os instrumentos.
+     *
+     * Os brokers que sobrescreverem este método devem invocar <code>super.shutdown()</code>
+     */
+    public void shutdown() {
+        instruments.values().forEach(instrument -> ((InstrumentImpl) instrument).closeFiles());
     }
 
     /**
@@ -459,78 +509,6 @@ public abstract class Broker {
 ////                .filter((s) -> strategiesTimeSeries.containsKey(s))
 ////                .map((s) -> strategiesTimeSeries.get(s))
 ////                .forEach((t) -> t.add(ohlcs));
-//    }
-    /**
-     * Faz o carregamento de uma timeséries que está salva em disco, afim de evitar rechamadas ao servidores
-     *
-     * @param name
-     * @param timeSeries
-     */
-//    private TimeSeries loadTimeseries(String name) {
-//        TimeSeries out = new TimeSeries();
-//        File dir = new File(System.getProperty("java.io.tmpdir") + "/ta-timeseries/");
-//        if (!dir.exists()) {
-//            return out;
-//        }
-//        final Path path = dir.toPath().resolve(name);
-//        if (!Files.exists(path)) {
-//            return out;
-//        }
-//
-//        try (Stream<String> stream = Files.lines(path)) {
-//            final List<String> lines = stream.collect(Collectors.toList());
-//            for (int i = 0, j = lines.size(); i < j; i++) {
-//                String[] parts = lines.get(i).trim().split(", ");
-//                Number[] vals = new Number[parts.length];
-//
-//                for (int k = 0, l = parts.length; k < l; k++) {
-//                    String value = parts[k].trim();
-//                    if (k == 0) {
-//                        vals[0] = Long.valueOf(value);
-//                    } else {
-//                        vals[k] = Double.valueOf(value);
-//                    }
-//                }
-//
-//                final OHLC ohlc = new OHLC(
-//                        (long) vals[0],
-//                        (double) vals[1],
-//                        (double) vals[2],
-//                        (double) vals[3],
-//                        (double) vals[4]
-//                );
-//                out.add(ohlc);
-//            }
-//        } catch (IOException ex) {
-//            LOGGER.log(Level.SEVERE, null, ex);
-//        }
-//        return out;
-//    }
-    /**
-     * Persiste am disco um timeséries.
-     *
-     * Invocado após o processamento de novos dados
-     *
-     * @param name
-     * @param timeSeries
-     */
-//    private void persistTimeseries(String name, TimeSeries timeSeries) {
-//        File dir = new File(System.getProperty("java.io.tmpdir") + "/ta-timeseries");
-//        if (!dir.exists()) {
-//            dir.mkdir();
-//        }
-//
-//        try (PrintWriter pw = new PrintWriter(dir.toPath().resolve(name).toFile())) {
-//            timeSeries.stream().forEach((t) -> {
-//                final OHLC ohlc = t.getValue();
-//                final String line = Arrays.toString(new Number[]{
-//                    ohlc.time, ohlc.open, ohlc.high, ohlc.low, ohlc.close
-//                });
-//                pw.println(line.substring(1, line.length() - 1));
-//            });
-//        } catch (FileNotFoundException ex) {
-//            LOGGER.log(Level.SEVERE, null, ex);
-//        }
 //    }
     /**
      * Gets the Account Exchange Rate
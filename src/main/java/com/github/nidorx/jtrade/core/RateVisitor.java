@@ -0,0 +1,26 @@
+package com.github.nidorx.jtrade.core;
+
+/**
+ * Recebe os valores de um {@link Rate} sem a materialização do objeto, permitindo percorrer um {@link TimeSeriesRate}
+ * sem alocações.
+ *
+ * <p>
+ * Essa é uma <strong>interface funcional</strong> cujo método funcional é
+ * {@link #accept(int, long, double, double, double, double, long)}.
+ *
+ * @author Alex Rodin <contato@alexrodin.info>
+ */
+@FunctionalInterface
+public interface RateVisitor {
+
+    /**
+     * @param index O indice no TimeSeries (0 = mais recente)
+     * @param time O início do candle (epoch seconds)
+     * @param open
+     * @param high
+     * @param low
+     * @param close
+     * @param volume O volume de ticks
+     */
+    void accept(int index, long time, double open, double high, double low, double close, long volume);
+}
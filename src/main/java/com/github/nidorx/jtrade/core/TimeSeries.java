@@ -4,7 +4,7 @@ import com.github.nidorx.jtrade.util.function.Cancelable;
 import java.time.Instant;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.Spliterator;
 import java.util.function.Consumer;
 import java.util.stream.Stream;
 
@@ -28,12 +28,33 @@ public interface TimeSeries<T> {
     /**
      * Permite ser informado quando esta Timeseries receber novos valores.
      *
-     * Se já houver registros, o callback é acionado imediatamente
+     * Se já houver registros, o callback é acionado imediatamente. Uma inserção em lote aciona o callback uma única
+     * vez
      *
      * @param callback
      * @return
      */
-    Cancelable onUpdate(Consumer<Boolean> callback);
+    Cancelable onUpdate(Consumer<TimeSeriesUpdate> callback);
+
+    /**
+     * Obtém o número de versão deste TimeSeries, incrementado a cada alteração nos registros.
+     *
+     * Permite verificar se houve alteração desde a última leitura sem percorrer os registros
+     *
+     * @return
+     */
+    long version();
+
+    /**
+     * Obtém uma visão imutável e consistente dos registros atuais deste TimeSeries.
+     *
+     * A visão não é afetada por alterações posteriores, permitindo várias leituras sobre o mesmo estado enquanto novos
+     * registros são adicionados em outra thread. No modo concorrente a visão é obtida em O(1), compartilhando os
+     * registros publicados, do contrário os registros são copiados em O(n)
+     *
+     * @return
+     */
+    TimeSeries<T> snapshot();
 
     /**
      * Retorna a quantidade de registros existentes no timeseries
@@ -66,12 +87,47 @@ public interface TimeSeries<T> {
     T one(Instant instant);
 
     /**
-     * Permite acesso ao stream dos registros deste TimeSeries
+     * Obtém o indice (0 = mais recente) do registro no instante informado, em O(log n)
+     *
+     * @param instant
+     * @return O indice, ou -1 se não existir registro exatamente no instante informado
+     */
+    int indexOf(Instant instant);
+
+    /**
+     * Search for a bar by time. The function returns the index of the bar corresponding to the specified time.
+     *
+     * Se não existir registro exatamente no instante informado e <code>exact</code> for falso, retorna o indice do
+     * registro anterior mais próximo (o candle que contém o instante).
+     *
+     * https://www.mql5.com/en/docs/series/ibarshift
+     *
+     * @param instant
+     * @param exact
+     * @return O indice (0 = mais recente), ou -1 se o registro não for encontrado
+     */
+    int barShift(Instant instant, boolean exact);
+
+    /**
+     * Permite acesso ao stream dos registros deste TimeSeries, do mais recente para o mais antigo.
+     *
+     * O stream percorre o estado atual do TimeSeries e pode ser executado em paralelo
      *
      * @return
      */
     Stream<Map.Entry<Instant, T>> stream();
 
+    /**
+     * Obtém um Spliterator dos registros atuais (ORDERED, SIZED, SUBSIZED e NONNULL), do mais recente para o mais
+     * antigo, dividido em partes iguais para processamento em paralelo.
+     *
+     * Também é IMMUTABLE nos snapshots e no modo concorrente. Nos demais casos, o processamento não deve ocorrer
+     * simultaneamente a alterações no TimeSeries
+     *
+     * @return
+     */
+    Spliterator<Map.Entry<Instant, T>> spliterator();
+
     /**
      * Gets history data of Rates.
      *
@@ -100,17 +156,53 @@ public interface TimeSeries<T> {
     /**
      * https://www.mql5.com/en/docs/series/copytime
      *
+     * Os instantes são ordenados do mais recente para o mais antigo, assim como os registros
+     *
+     * @param count
+     * @return
+     */
+    List<Instant> time(int count);
+
+    List<Instant> time(Instant stop);
+
+    List<Instant> time(int start, int count);
+
+    List<Instant> time(Instant start, int count);
+
+    List<Instant> time(Instant start, Instant stop);
+
+    /**
+     * Obtém os instantes (epoch millis) diretamente do indice, do mais recente para o mais antigo, sem criar objetos
+     * por registro
+     *
+     * @param count
+     * @return
+     */
+    long[] timeMillis(int count);
+
+    long[] timeMillis(Instant stop);
+
+    long[] timeMillis(int start, int count);
+
+    long[] timeMillis(Instant start, int count);
+
+    long[] timeMillis(Instant start, Instant stop);
+
+    /**
+     * Obtém os instantes (epoch seconds) diretamente do indice, do mais recente para o mais antigo, sem criar objetos
+     * por registro
+     *
      * @param count
      * @return
      */
-    Set<Instant> time(int count);
+    long[] timeSeconds(int count);
 
-    Set<Instant> time(Instant stop);
+    long[] timeSeconds(Instant stop);
 
-    Set<Instant> time(int start, int count);
+    long[] timeSeconds(int start, int count);
 
-    Set<Instant> time(Instant start, int count);
+    long[] timeSeconds(Instant start, int count);
 
-    Set<Instant> time(Instant start, Instant stop);
+    long[] timeSeconds(Instant start, Instant stop);
 
 }
@@ -18,6 +18,9 @@ import java.time.Instant;
  */
 public interface TimeSeriesRate extends TimeSeries<Rate> {
 
+    @Override
+    TimeSeriesRate snapshot();
+
     /**
      * https://www.mql5.com/en/docs/series/copyopen
      *
@@ -82,4 +85,85 @@ public interface TimeSeriesRate extends TimeSeries<Rate> {
 
     double[] low(Instant start, Instant stop);
 
+    /**
+     * Percorre os registros a partir do indice informado, do mais recente para o mais antigo, sem criar objetos
+     *
+     * @param start O indice inicial (0 = mais recente)
+     * @param count
+     * @param visitor
+     * @return A quantidade de registros visitados
+     */
+    int forEach(int start, int count, RateVisitor visitor);
+
+    /**
+     * Obtém o indice do registro com o maior valor do preço informado, a partir do indice inicial. Em caso de empate,
+     * retorna o registro mais recente.
+     *
+     * https://www.mql5.com/en/docs/series/ihighest
+     *
+     * @param price OPEN, HIGH, LOW, CLOSE ou um preço calculado
+     * @param start O indice inicial (0 = mais recente)
+     * @param count
+     * @return O indice, ou -1 se não existirem registros no intervalo
+     */
+    int iHighest(AppliedPrice price, int start, int count);
+
+    /**
+     * Obtém o indice do registro com o menor valor do preço informado, a partir do indice inicial. Em caso de empate,
+     * retorna o registro mais recente.
+     *
+     * https://www.mql5.com/en/docs/series/ilowest
+     *
+     * @param price
+     * @param start O indice inicial (0 = mais recente)
+     * @param count
+     * @return O indice, ou -1 se não existirem registros no intervalo
+     */
+    int iLowest(AppliedPrice price, int start, int count);
+
+    /**
+     * Obtém o maior valor do preço informado no intervalo (ex. a máxima dos últimos N candles), em O(1) sobre o índice
+     * mantido pelo TimeSeries
+     *
+     * @param price
+     * @param start
+     * @param count
+     * @return O valor, ou NaN se não existirem registros no intervalo
+     */
+    double highest(AppliedPrice price, int start, int count);
+
+    double highest(AppliedPrice price, Instant start, Instant stop);
+
+    /**
+     * Obtém o menor valor do preço informado no intervalo
+     *
+     * @param price
+     * @param start
+     * @param count
+     * @return O valor, ou NaN se não existirem registros no intervalo
+     */
+    double lowest(AppliedPrice price, int start, int count);
+
+    double lowest(AppliedPrice price, Instant start, Instant stop);
+
+    /**
+     * Obtém a soma dos valores do preço informado no intervalo
+     *
+     * @param price
+     * @param start
+     * @param count
+     * @return
+     */
+    double sum(AppliedPrice price, int start, int count);
+
+    /**
+     * Obtém a média dos valores do preço informado no intervalo
+     *
+     * @param price
+     * @param start
+     * @param count
+     * @return O valor, ou NaN se não existirem registros no intervalo
+     */
+    double mean(AppliedPrice price, int start, int count);
+
 }
@@ -0,0 +1,83 @@
+package com.github.nidorx.jtrade.core;
+
+import java.time.Instant;
+
+/**
+ * Informações sobre uma alteração nos registros de um {@link TimeSeries}.
+ *
+ * Uma inserção em lote gera um único evento, com o intervalo de tempo afetado
+ *
+ * @author Alex Rodin <contato@alexrodin.info>
+ */
+public class TimeSeriesUpdate {
+
+    /**
+     * Indica que foram inseridos registros mais antigos do que o registro mais recente existente antes da alteração.
+     *
+     * Pode significar que o window frame foi modificado ou registros mais antigos foram adicionados, os indicadores
+     * precisam ser recalculados
+     */
+    public final boolean oldValuesAdded;
+
+    /**
+     * O instante do registro mais antigo afetado pela alteração
+     */
+    public final Instant oldest;
+
+    /**
+     * O instante do registro mais recente afetado pela alteração
+     */
+    public final Instant newest;
+
+    /**
+     * A quantidade de registros inseridos
+     */
+    public final int count;
+
+    /**
+     * A quantidade de registros mais antigos descartados pela política de retenção do TimeSeries
+     */
+    public final int evicted;
+
+    /**
+     * Indica que apenas o registro mais recente (ex. o candle em formação) foi alterado, no mesmo instante.
+     *
+     * Os indicadores precisam recalcular apenas o último valor
+     */
+    public final boolean lastUpdated;
+
+    /**
+     * O instante a partir do qual os registros foram alterados, os registros anteriores permanecem inalterados.
+     *
+     * Permite que os indicadores recalculem apenas os valores a partir deste instante quando registros antigos são
+     * adicionados (ex. preenchimento de uma lacuna no histórico). Nulo quando todos os registros podem ter sido
+     * alterados
+     */
+    public final Instant changedSince;
+
+    public TimeSeriesUpdate(boolean oldValuesAdded, Instant oldest, Instant newest, int count, int evicted) {
+        this(oldValuesAdded, oldest, newest, count, evicted, false);
+    }
+
+    public TimeSeriesUpdate(boolean oldValuesAdded, Instant oldest, Instant newest, int count, int evicted,
+            boolean lastUpdated) {
+        this(oldValuesAdded, oldest, newest, count, evicted, lastUpdated, oldValuesAdded ? null : oldest);
+    }
+
+    public TimeSeriesUpdate(boolean oldValuesAdded, Instant oldest, Instant newest, int count, int evicted,
+            boolean lastUpdated, Instant changedSince) {
+        this.oldValuesAdded = oldValuesAdded;
+        this.oldest = oldest;
+        this.newest = newest;
+        this.count = count;
+        this.evicted = evicted;
+        this.lastUpdated = lastUpdated;
+        this.changedSince = changedSince;
+    }
+
+    @Override
+    public String toString() {
+        return " " + oldest + " " + newest + " count=" + count + " evicted=" + evicted
+                + " oldValuesAdded=" + oldValuesAdded + " lastUpdated=" + lastUpdated + " changedSince=" + changedSince;
+    }
+}
@@ -4,11 +4,18 @@ import com.github.nidorx.jtrade.core.Instrument;
 import com.github.nidorx.jtrade.core.Rate;
 import com.github.nidorx.jtrade.core.Tick;
 import com.github.nidorx.jtrade.core.TimeFrame;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import com.github.nidorx.jtrade.core.TimeSeriesRate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Implementação para permitir ao Broker gerenciar o instrumento
@@ -17,18 +24,61 @@ import com.github.nidorx.jtrade.core.TimeSeriesRate;
  */
 public final class InstrumentImpl extends Instrument {
 
-    private final Map<TimeFrame, TimeSeriesRate> timeSeries = new ConcurrentHashMap<>();
+    private static final Logger LOGGER = Logger.getLogger(InstrumentImpl.class.getName());
 
-    private final TimeSeriesAbstract<Tick> ticks = new TimeSeriesAbstract<Tick>() {
-        @Override
-        public Instant extract(Tick item) {
-            return item.time;
-        }
-    };
+    /**
+     * Os TimeSeries de cada timeframe, criados apenas quando usados pela primeira vez
+     *
+     * @see #timeSeries(com.github.nidorx.jtrade.core.TimeFrame)
+     */
+    private final Map<TimeFrame, TimeSeriesRateImpl> timeSeries = new ConcurrentHashMap<>();
+
+    /**
+     * Política de retenção dos TimeSeries, aplicada também aos TimeSeries criados posteriormente
+     */
+    private final Map<TimeFrame, RetentionPolicy> retentions = new ConcurrentHashMap<>();
+
+    private volatile RetentionPolicy retention = RetentionPolicy.UNLIMITED;
+
+    /**
+     * Quando habilitado, os TimeSeries criados são preenchidos a partir do menor timeframe existente
+     */
+    private volatile boolean deriveTimeframes = false;
+
+    /**
+     * Os TimeSeries construídos a partir de outro timeframe
+     */
+    private final Map<TimeFrame, RateResampler> resamplers = new ConcurrentHashMap<>();
+
+    /**
+     * Diretório e nome do Broker usados para a persistência dos candles, quando habilitado
+     */
+    private volatile Path directory;
+
+    private volatile String storageName;
 
-    private double bid = 0D;
+    /**
+     * Os arquivos onde os candles são persistidos, quando habilitado
+     */
+    private final Map<TimeFrame, RateFile> files = new ConcurrentHashMap<>();
 
-    private double ask = 0D;
+    /**
+     * O Broker é o único escritor, as estratégias e indicadores leem os registros sem bloqueio
+     */
+    private final TickStore ticks = new TickStore(symbol);
+
+    /**
+     * Construção dos candles a partir dos ticks, quando habilitado
+     *
+     * @see #setAggregateTicks(boolean)
+     */
+    private final Map<TimeFrame, RateAggregator> aggregators = new EnumMap<>(TimeFrame.class);
+
+    private volatile boolean aggregateTicks = false;
+
+    private volatile double bid = 0D;
+
+    private volatile double ask = 0D;
 
     private int stopLevel = 0;
 
@@ -36,12 +86,10 @@ public final class InstrumentImpl extends Instrument {
 
     public InstrumentImpl(String symbol, String base, String quote) {
         super(symbol, base, quote);
-        initTimeseries();
     }
 
     public InstrumentImpl(String symbol, String base, String quote, int digits, double contractSize, double tickValue) {
         super(symbol, base, quote, digits, contractSize, tickValue);
-        initTimeseries();
     }
 
     public InstrumentImpl(String symbol, String base, String quote, int digits, double contractSize, double tickValue,
@@ -49,7 +97,6 @@ public final class InstrumentImpl extends Instrument {
         super(symbol, base, quote, digits, contractSize, tickValue);
         this.bid = bid;
         this.ask = ask;
-        initTimeseries();
     }
 
     @Override
@@ -80,9 +127,159 @@ public final class InstrumentImpl extends Instrument {
         this.freezeLevel = freezeLevel;
     }
 
+    /**
+     * Define a política de retenção dos candles de todos os timeframes deste instrumento.
+     *
+     * Permite manter o consumo de memória estável em sessões de longa duração
+     *
+     * @param retention
+     */
+    public void setRetention(RetentionPolicy retention) {
+        this.retention = retention == null ? RetentionPolicy.UNLIMITED : retention;
+        retentions.clear();
+        timeSeries.values().forEach(ts -> ts.setRetention(retention));
+    }
+
+    /**
+     * Define a política de retenção dos candles do timeframe informado
+     *
+     * @param timeFrame
+     * @param retention
+     */
+    public void setRetention(TimeFrame timeFrame, RetentionPolicy retention) {
+        retentions.put(timeFrame, retention == null ? RetentionPolicy.UNLIMITED : retention);
+        final TimeSeriesRateImpl ts = timeSeries.get(timeFrame);
+        if (ts != null) {
+            ts.setRetention(retention);
+        }
+    }
+
+    /**
+     * Habilita a construção dos TimeSeries criados a partir do menor timeframe existente (ex. H1 a partir de M1),
+     * evitando novas consultas ao broker e mantendo os timeframes consistentes entre si. O TimeSeries derivado é
+     * atualizado a cada novo candle do TimeSeries base
+     *
+     * @param deriveTimeframes
+     */
+    public void setDeriveTimeframes(boolean deriveTimeframes) {
+        this.deriveTimeframes = deriveTimeframes;
+    }
+
+    /**
+     * Define a política de retenção dos ticks deste instrumento
+     *
+     * @param retention
+     */
+    public void setTickRetention(RetentionPolicy retention) {
+        ticks.setRetention(retention);
+    }
+
+    /**
+     * Habilita a persistência em disco dos candles deste instrumento, evitando re-consultas ao broker.
+     *
+     * Os candles já persistidos são carregados nos TimeSeries (os arquivos dos TimeSeries ainda não criados são abertos
+     * na criação), os novos candles recebidos são incluídos no final dos arquivos. Um arquivo por timeframe, no formato
+     * <code>{name}_{symbol}_{timeframe}</code>. Os timeframes construídos a partir de outro TimeSeries (ver
+     * {@link #setDeriveTimeframes(boolean)}) não são persistidos, são reconstruídos a partir do TimeSeries base
+     *
+     * @param directory
+     * @param name O nome único do Broker
+     * @throws IOException
+     */
+    public void persistTo(Path directory, String name) throws IOException {
+        this.directory = directory;
+        this.storageName = name;
+        for (Map.Entry<TimeFrame, TimeSeriesRateImpl> entry : timeSeries.entrySet()) {
+            if (!resamplers.containsKey(entry.getKey())) {
+                load(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Abre o arquivo de persistência do timeframe e carrega os candles salvos no TimeSeries
+     *
+     * @param timeframe
+     * @param ts
+     * @throws IOException
+     */
+    private void load(TimeFrame timeframe, TimeSeriesRateImpl ts) throws IOException {
+        final Path path = directory.resolve(storageName + "_" + symbol + "_" + timeframe.name());
+        final RateFile file = RateFile.open(path, symbol, timeframe);
+        final RateFile previous = files.put(timeframe, file);
+        if (previous != null) {
+            previous.close();
+        }
+        ts.add(file.read());
+    }
+
+    /**
+     * Sincroniza e fecha os arquivos de persistência dos candles, desabilitando a persistência.
+     *
+     * Invocado pelo Broker ao remover o instrumento ou ao ser encerrado
+     */
+    public void closeFiles() {
+        directory = null;
+        files.values().forEach(file -> {
+            try {
+                file.close();
+            } catch (IOException ex) {
+                LOGGER.log(Level.SEVERE, null, ex);
+            }
+        });
+        files.clear();
+    }
+
+    /**
+     * Obtém o TimeSeries do timeframe informado, criado no primeiro acesso
+     *
+     * @param timeFrame
+     * @return
+     */
     @Override
     public TimeSeriesRate timeSeries(TimeFrame timeFrame) {
-        return timeSeries.get(timeFrame);
+        return timeFrame == null ? null : timeSeries.computeIfAbsent(timeFrame, this::createTimeSeries);
+    }
+
+    private TimeSeriesRateImpl createTimeSeries(TimeFrame timeframe) {
+        final TimeSeriesRateImpl ts = new TimeSeriesRateImpl(
+                TimeSeriesRateImpl.STORAGE.COLUMNAR, retentions.getOrDefault(timeframe, retention), true
+        );
+
+        if (deriveTimeframes) {
+            derive(timeframe, ts);
+        }
+
+        // O TimeSeries derivado é construído apenas a partir do TimeSeries base, não é persistido
+        if (directory != null && !resamplers.containsKey(timeframe)) {
+            try {
+                load(timeframe, ts);
+            } catch (IOException ex) {
+                LOGGER.log(Level.SEVERE, null, ex);
+            }
+        }
+        return ts;
+    }
+
+    /**
+     * Mantém o TimeSeries construído a partir do menor timeframe existente que possa ser agrupado no timeframe
+     * informado, atualizado incrementalmente a cada novo candle do TimeSeries base
+     *
+     * @param timeframe
+     * @param ts
+     */
+    private void derive(TimeFrame timeframe, TimeSeriesRateImpl ts) {
+        for (TimeFrame base : TimeFrame.values()) {
+            if (base.seconds >= timeframe.seconds) {
+                break;
+            }
+            // As semanas não coincidem com os meses
+            final TimeSeriesRateImpl source = base == TimeFrame.W1 ? null : timeSeries.get(base);
+            if (source != null) {
+                resamplers.put(timeframe, new RateResampler(source, ts, symbol, timeframe, tickSize));
+                return;
+            }
+        }
     }
 
     @Override
@@ -100,29 +297,106 @@ public final class InstrumentImpl extends Instrument {
         return ticks.list(start, stop);
     }
 
-    public void processTick(Tick tick) {
-        if (tick.symbol.equals(this.symbol)) {
-            ticks.add(tick);
-            bid = tick.bid;
-            ask = tick.ask;
+    /**
+     * Habilita a construção dos candles de todos os timeframes a partir dos ticks recebidos, sem depender do envio dos
+     * candles pelo Broker.
+     *
+     * @param aggregateTicks
+     */
+    public void setAggregateTicks(boolean aggregateTicks) {
+        this.aggregateTicks = aggregateTicks;
+    }
+
+    /**
+     * Obtém o candle em formação do timeframe informado, construído a partir dos ticks
+     *
+     * @param timeframe
+     * @return O candle, ou null se a construção dos candles não estiver habilitada ou nenhum tick foi recebido
+     * @see #setAggregateTicks(boolean)
+     */
+    public Rate currentRate(TimeFrame timeframe) {
+        synchronized (aggregators) {
+            final RateAggregator aggregator = aggregators.get(timeframe);
+            return aggregator == null ? null : aggregator.current();
+        }
+    }
+
+    /**
+     * Processa o novo tick
+     *
+     * @param tick
+     * @return Os candles encerrados por este tick, quando a construção dos candles a partir dos ticks está habilitada
+     */
+    public List<Rate> processTick(Tick tick) {
+        if (!tick.symbol.equals(this.symbol)) {
+            return Collections.emptyList();
+        }
+
+        bid = tick.bid;
+        ask = tick.ask;
+        if (!ticks.add(tick) || !aggregateTicks) {
+            return Collections.emptyList();
         }
+
+        List<Rate> closed = Collections.emptyList();
+        synchronized (aggregators) {
+            final long time = TimeSeriesAbstract.key(tick.time);
+            for (TimeFrame timeframe : TimeFrame.values()) {
+                RateAggregator aggregator = aggregators.get(timeframe);
+                if (aggregator == null) {
+                    aggregator = new RateAggregator(symbol, timeframe, tickSize);
+                    aggregators.put(timeframe, aggregator);
+                }
+
+                final Rate rate = aggregator.process(time, tick.bid, tick.ask, tick.volume);
+                if (rate != null) {
+                    if (closed.isEmpty()) {
+                        closed = new ArrayList<>();
+                    }
+                    closed.add(rate);
+                }
+
+                // Atualiza o candle em formação no TimeSeries, permitindo o cálculo dos indicadores intrabar
+                final TimeSeriesRateImpl ts = timeSeries.get(timeframe);
+                if (ts != null && !resamplers.containsKey(timeframe)) {
+                    ts.update(aggregator.current());
+                }
+            }
+        }
+
+        // Candles encerrados, persistidos em disco
+        closed.forEach(this::persist);
+        return closed;
     }
 
     public void processRate(Rate rate) {
-        if (!timeSeries.containsKey(rate.timeframe)) {
+        if (rate.timeframe == null) {
             return;
         }
 
-        ((TimeSeriesRateImpl) timeSeries.get(rate.timeframe)).add(rate);
+        // Os TimeSeries derivados são construídos apenas a partir do TimeSeries base
+        if (!resamplers.containsKey(rate.timeframe)) {
+            // O candle recebido substitui o candle em formação, se existir
+            ((TimeSeriesRateImpl) timeSeries(rate.timeframe)).update(rate);
+        }
 
-        // Após o processamento, salva o timeséries em disco, evita re-consultas ao broker
-//            final String timeSeriesName = getName() + "_" + instrument.getSymbol() + "_" + timeFrame.name();;
-//            persistTimeseries(timeSeriesName, tsGlobal);
+        persist(rate);
     }
 
-    private void initTimeseries() {
-        for (TimeFrame timeframe : TimeFrame.values()) {
-            timeSeries.put(timeframe, new TimeSeriesRateImpl());
+    /**
+     * Após o processamento, salva o candle em disco, evita re-consultas ao broker. Os candles dos timeframes derivados
+     * não possuem arquivo
+     *
+     * @param rate
+     */
+    private void persist(Rate rate) {
+        final RateFile file = files.get(rate.timeframe);
+        if (file != null) {
+            try {
+                file.append(rate);
+            } catch (IOException ex) {
+                LOGGER.log(Level.SEVERE, null, ex);
+            }
         }
     }
 
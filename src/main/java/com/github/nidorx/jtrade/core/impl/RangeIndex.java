@@ -0,0 +1,325 @@
+package com.github.nidorx.jtrade.core.impl;
+
+import java.util.Arrays;
+
+/**
+ * Índice de consultas por intervalo (maior, menor e soma) sobre um preço de um TimeSeries.
+ *
+ * Os registros são agrupados em blocos de {@value #BLOCK} posições cronológicas, cada bloco mantém o maior e o menor
+ * valor (e suas posições) e a soma acumulada dos blocos anteriores. Sobre os blocos, uma sparse table responde o maior e
+ * o menor valor de qualquer sequência de blocos em O(1), restando percorrer apenas as extremidades do intervalo (no
+ * máximo 2 blocos).
+ *
+ * <p>
+ * O índice é construído sob demanda e estendido apenas no final, conforme novos registros são adicionados ao TimeSeries.
+ * Os blocos cujos registros foram descartados pela política de retenção são ignorados. O registro mais recente (que pode
+ * ser substituído) nunca faz parte de um bloco. Quando o TimeSeries recebe registros antigos, o índice é reconstruído.
+ *
+ * @author Alex Rodin <contato@alexrodin.info>
+ */
+final class RangeIndex {
+
+    static final int BLOCK = 64;
+
+    /**
+     * Obtém os valores do preço a partir do indice informado (0 = mais recente), do mais recente para o mais antigo
+     */
+    @FunctionalInterface
+    interface Values {
+
+        double[] get(int index, int count);
+    }
+
+    /**
+     * Geração do TimeSeries usada na construção do índice
+     *
+     * @see TimeSeriesAbstract.State#generation
+     */
+    private int generation = -1;
+
+    /**
+     * Chave (epoch millis) do primeiro registro de cada bloco
+     */
+    private long[] keys = new long[16];
+
+    private double[] max = new double[16];
+
+    private double[] min = new double[16];
+
+    /**
+     * Posição do maior e do menor valor dentro de cada bloco
+     */
+    private int[] maxAt = new int[16];
+
+    private int[] minAt = new int[16];
+
+    /**
+     * Soma dos valores dos blocos anteriores a cada bloco
+     */
+    private double[] prefix = new double[17];
+
+    /**
+     * <code>maxTable[k][i]</code> = bloco com o maior valor entre os blocos <code>i .. i + 2^k - 1</code> (k &gt;= 1)
+     */
+    private int[][] maxTable = new int[1][];
+
+    private int[][] minTable = new int[1][];
+
+    /**
+     * Primeiro bloco com todos os registros mantidos pelo TimeSeries
+     */
+    private int first;
+
+    private int blocks;
+
+    /**
+     * Posição cronológica do primeiro registro do bloco {@link #first}, no estado usado na última consulta
+     */
+    private int base;
+
+    /**
+     * Valor encontrado pela última consulta de maior ou menor valor
+     */
+    private double found;
+
+    /**
+     * Obtém o indice (0 = mais recente) do maior ou do menor valor no intervalo. Em caso de empate, prevalece o registro
+     * mais recente
+     *
+     * @param s
+     * @param generation
+     * @param values
+     * @param start
+     * @param count
+     * @param highest
+     * @return O indice, ou -1 se o intervalo estiver vazio
+     */
+    synchronized int best(TimeSeriesAbstract.State s, int generation, Values values, int start, int count,
+            boolean highest) {
+        if (start < 0 || start >= s.size || count <= 0) {
+            return -1;
+        }
+        sync(s, generation, values);
+
+        final int hi = s.size - 1 - start;
+        final int lo = Math.max(0, hi - count + 1);
+        final int from = Math.max(0, -Math.floorDiv(base - lo, BLOCK));
+        final int to = Math.min(blocks - first - 1, Math.floorDiv(hi - base + 1, BLOCK) - 1);
+
+        int position = -1;
+        if (from > to) {
+            position = scan(s, values, lo, hi, highest, position);
+        } else {
+            final int block = query(first + from, first + to, highest);
+            position = base + (block - first) * BLOCK + (highest ? maxAt[block] : minAt[block]);
+            found = highest ? max[block] : min[block];
+            position = scan(s, values, lo, base + from * BLOCK - 1, highest, position);
+            position = scan(s, values, base + (to + 1) * BLOCK, hi, highest, position);
+        }
+        return s.size - 1 - position;
+    }
+
+    /**
+     * Obtém o maior ou o menor valor no intervalo
+     *
+     * @param s
+     * @param generation
+     * @param values
+     * @param start
+     * @param count
+     * @param highest
+     * @return O valor, ou NaN se o intervalo estiver vazio
+     */
+    synchronized double value(TimeSeriesAbstract.State s, int generation, Values values, int start, int count,
+            boolean highest) {
+        return best(s, generation, values, start, count, highest) < 0 ? Double.NaN : found;
+    }
+
+    /**
+     * Obtém a soma dos valores no intervalo
+     *
+     * @param s
+     * @param generation
+     * @param values
+     * @param start
+     * @param count
+     * @return
+     */
+    synchronized double sum(TimeSeriesAbstract.State s, int generation, Values values, int start, int count) {
+        if (start < 0 || start >= s.size || count <= 0) {
+            return 0;
+        }
+        sync(s, generation, values);
+
+        final int hi = s.size - 1 - start;
+        final int lo = Math.max(0, hi - count + 1);
+        final int from = Math.max(0, -Math.floorDiv(base - lo, BLOCK));
+        final int to = Math.min(blocks - first - 1, Math.floorDiv(hi - base + 1, BLOCK) - 1);
+
+        if (from > to) {
+            return sum(s, values, lo, hi);
+        }
+        return prefix[first + to + 1] - prefix[first + from]
+                + sum(s, values, lo, base + from * BLOCK - 1)
+                + sum(s, values, base + (to + 1) * BLOCK, hi);
+    }
+
+    /**
+     * Descarta os blocos removidos do TimeSeries e adiciona os blocos completos ainda não indexados
+     *
+     * @param s
+     * @param generation
+     * @param values
+     */
+    private void sync(TimeSeriesAbstract.State s, int generation, Values values) {
+        if (this.generation != generation) {
+            this.generation = generation;
+            clear();
+        }
+
+        final long oldest = s.times[s.head];
+        while (first < blocks && keys[first] < oldest) {
+            first++;
+        }
+        if ((first == blocks && blocks > 0) || (first > 1024 && first * 2 > blocks)) {
+            // Todos os blocos descartados, ou a maior parte dos arrays sem uso
+            clear();
+        }
+
+        base = 0;
+        if (first < blocks) {
+            base = s.search(keys[first]);
+            if (base < 0) {
+                clear();
+                base = 0;
+            }
+        }
+
+        // O registro mais recente não faz parte dos blocos
+        for (int next = base + (blocks - first) * BLOCK; next + BLOCK <= s.size - 1; next += BLOCK) {
+            append(s.times[s.head + next], values.get(s.size - next - BLOCK, BLOCK));
+        }
+    }
+
+    private void clear() {
+        first = 0;
+        blocks = 0;
+    }
+
+    /**
+     * Adiciona um bloco
+     *
+     * @param key
+     * @param block Os valores do bloco, do mais recente para o mais antigo
+     */
+    private void append(long key, double[] block) {
+        final int m = blocks;
+        if (m + 1 >= keys.length) {
+            final int length = keys.length * 2;
+            keys = Arrays.copyOf(keys, length);
+            max = Arrays.copyOf(max, length);
+            min = Arrays.copyOf(min, length);
+            maxAt = Arrays.copyOf(maxAt, length);
+            minAt = Arrays.copyOf(minAt, length);
+            prefix = Arrays.copyOf(prefix, length + 1);
+            for (int k = 1; k < maxTable.length; k++) {
+                maxTable[k] = Arrays.copyOf(maxTable[k], length);
+                minTable[k] = Arrays.copyOf(minTable[k], length);
+            }
+        }
+
+        double hi = Double.NEGATIVE_INFINITY;
+        double lo = Double.POSITIVE_INFINITY;
+        double sum = 0;
+        for (int offset = 0; offset < BLOCK; offset++) {
+            final double value = block[BLOCK - 1 - offset];
+            if (value >= hi) {
+                hi = value;
+                maxAt[m] = offset;
+            }
+            if (value <= lo) {
+                lo = value;
+                minAt[m] = offset;
+            }
+            sum += value;
+        }
+        keys[m] = key;
+        max[m] = hi;
+        min[m] = lo;
+        prefix[m + 1] = prefix[m] + sum;
+
+        for (int k = 1, i = m - 1; i >= 0; k++, i = m - (1 << k) + 1) {
+            if (k == maxTable.length) {
+                maxTable = Arrays.copyOf(maxTable, k + 1);
+                minTable = Arrays.copyOf(minTable, k + 1);
+                maxTable[k] = new int[keys.length];
+                minTable[k] = new int[keys.length];
+            }
+            final int half = i + (1 << (k - 1));
+            maxTable[k][i] = better(level(maxTable, k - 1, i), level(maxTable, k - 1, half), true);
+            minTable[k][i] = better(level(minTable, k - 1, i), level(minTable, k - 1, half), false);
+        }
+        blocks++;
+    }
+
+    private static int level(int[][] table, int k, int i) {
+        return k == 0 ? i : table[k][i];
+    }
+
+    /**
+     * Obtém o bloco com o maior ou menor valor entre os blocos informados (inclusivos), em O(1)
+     *
+     * @param from
+     * @param to
+     * @param highest
+     * @return
+     */
+    private int query(int from, int to, boolean highest) {
+        final int k = 31 - Integer.numberOfLeadingZeros(to - from + 1);
+        final int[][] table = highest ? maxTable : minTable;
+        return better(level(table, k, from), level(table, k, to - (1 << k) + 1), highest);
+    }
+
+    /**
+     * Em caso de empate, prevalece o bloco mais recente
+     */
+    private int better(int a, int b, boolean highest) {
+        if (highest) {
+            return max[a] > max[b] ? a : (max[b] > max[a] ? b : Math.max(a, b));
+        }
+        return min[a] < min[b] ? a : (min[b] < min[a] ? b : Math.max(a, b));
+    }
+
+    /**
+     * Percorre as posições cronológicas informadas (inclusivas)
+     *
+     * @return A posição do melhor valor encontrado
+     */
+    private int scan(TimeSeriesAbstract.State s, Values values, int from, int to, boolean highest, int position) {
+        if (from > to) {
+            return position;
+        }
+        final double[] range = values.get(s.size - 1 - to, to - from + 1);
+        for (int i = 0; i < range.length; i++) {
+            final int p = to - i;
+            final double value = range[i];
+            if (position < 0
+                    || (highest ? value > found : value < found)
+                    || (value == found && p > position)) {
+                found = value;
+                position = p;
+            }
+        }
+        return position;
+    }
+
+    private static double sum(TimeSeriesAbstract.State s, Values values, int from, int to) {
+        double sum = 0;
+        if (from <= to) {
+            for (double value : values.get(s.size - 1 - to, to - from + 1)) {
+                sum += value;
+            }
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,190 @@
+package com.github.nidorx.jtrade.core.impl;
+
+import com.github.nidorx.jtrade.core.Rate;
+import com.github.nidorx.jtrade.core.TimeFrame;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Constrói os candles de um timeframe a partir dos ticks, em O(1) por tick.
+ *
+ * O candle em formação é mantido em campos primitivos e atualizado a cada tick, o {@link Rate} é criado apenas quando
+ * o período do candle termina (ao receber o primeiro tick do período seguinte), seguindo as regras do Metatrader:
+ * preços a partir do BID, volume de ticks, início da semana no domingo e meses do calendário.
+ *
+ * @author Alex Rodin <contato@alexrodin.info>
+ */
+final class RateAggregator {
+
+    /**
+     * 1970-01-04, primeiro domingo após o epoch
+     */
+    private static final long FIRST_SUNDAY = 3 * 86400L;
+
+    private final String symbol;
+
+    private final TimeFrame timeframe;
+
+    /**
+     * Tamanho de um ponto, usado para calcular o spread
+     */
+    private final double point;
+
+    /**
+     * Início do candle em formação (epoch seconds)
+     */
+    private long start = Long.MIN_VALUE;
+
+    /**
+     * Início do próximo candle (epoch seconds)
+     */
+    private long end = Long.MIN_VALUE;
+
+    private double open;
+
+    private double high;
+
+    private double low;
+
+    private double close;
+
+    private long volumeTick;
+
+    private long volumeReal;
+
+    private int spread;
+
+    RateAggregator(String symbol, TimeFrame timeframe, double point) {
+        this.symbol = symbol;
+        this.timeframe = timeframe;
+        this.point = point;
+    }
+
+    /**
+     * Atualiza o candle em formação com o tick informado
+     *
+     * @param time Epoch millis
+     * @param bid
+     * @param ask
+     * @param volume
+     * @return O candle encerrado, quando o tick pertence ao período seguinte, ou null
+     */
+    Rate process(long time, double bid, double ask, double volume) {
+        final long seconds = Math.floorDiv(time, 1000L);
+        if (seconds < start) {
+            // Tick atrasado, o candle já foi encerrado
+            return null;
+        }
+
+        Rate closed = null;
+        if (seconds >= end) {
+            closed = current();
+            start = start(seconds);
+            end = end(start);
+            open = high = low = bid;
+            volumeTick = 0;
+            volumeReal = 0;
+            spread = Integer.MAX_VALUE;
+        }
+
+        high = Math.max(high, bid);
+        low = Math.min(low, bid);
+        close = bid;
+        volumeTick++;
+        volumeReal += (long) volume;
+        spread = (int) Math.min(spread, Math.round((ask - bid) / point));
+        return closed;
+    }
+
+    /**
+     * Agrupa o candle de um timeframe menor no candle em formação
+     *
+     * @param rate
+     * @return O candle encerrado, quando o candle informado pertence ao período seguinte, ou null
+     */
+    Rate process(Rate rate) {
+        final long seconds = rate.time.getEpochSecond();
+        if (seconds < start) {
+            return null;
+        }
+
+        Rate closed = null;
+        if (seconds >= end) {
+            closed = current();
+            start = start(seconds);
+            end = end(start);
+            open = rate.open;
+            high = rate.high;
+            low = rate.low;
+            volumeTick = 0;
+            volumeReal = 0;
+            spread = Integer.MAX_VALUE;
+        }
+
+        high = Math.max(high, rate.high);
+        low = Math.min(low, rate.low);
+        close = rate.close;
+        volumeTick += rate.volumeTick;
+        volumeReal += rate.volumeReal;
+        spread = Math.min(spread, rate.spread);
+        return closed;
+    }
+
+    /**
+     * Cria uma cópia do estado atual, permitindo simular a inclusão de um candle sem alterar este agrupamento
+     *
+     * @return
+     */
+    RateAggregator copy() {
+        final RateAggregator out = new RateAggregator(symbol, timeframe, point);
+        out.start = start;
+        out.end = end;
+        out.open = open;
+        out.high = high;
+        out.low = low;
+        out.close = close;
+        out.volumeTick = volumeTick;
+        out.volumeReal = volumeReal;
+        out.spread = spread;
+        return out;
+    }
+
+    /**
+     * Obtém o candle em formação
+     *
+     * @return O candle, ou null se nenhum tick foi recebido
+     */
+    Rate current() {
+        if (start == Long.MIN_VALUE) {
+            return null;
+        }
+        return new Rate(symbol, Instant.ofEpochSecond(start), open, high, low, close, volumeTick, volumeReal, spread,
+                timeframe);
+    }
+
+    /**
+     * Obtém o início do candle que contém o instante informado
+     *
+     * @param seconds
+     * @return
+     */
+    private long start(long seconds) {
+        switch (timeframe) {
+            case W1:
+                return seconds - Math.floorMod(seconds - FIRST_SUNDAY, (long) timeframe.seconds);
+            case MN1:
+                final LocalDateTime date = LocalDateTime.ofEpochSecond(seconds, 0, ZoneOffset.UTC);
+                return date.toLocalDate().withDayOfMonth(1).atStartOfDay().toEpochSecond(ZoneOffset.UTC);
+            default:
+                return seconds - Math.floorMod(seconds, (long) timeframe.seconds);
+        }
+    }
+
+    private long end(long start) {
+        if (timeframe == TimeFrame.MN1) {
+            return LocalDateTime.ofEpochSecond(start, 0, ZoneOffset.UTC).plusMonths(1).toEpochSecond(ZoneOffset.UTC);
+        }
+        return start + timeframe.seconds;
+    }
+}
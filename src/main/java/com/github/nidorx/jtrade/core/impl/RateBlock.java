@@ -0,0 +1,392 @@
+package com.github.nidorx.jtrade.core.impl;
+
+import java.util.Arrays;
+
+/**
+ * Bloco imutável de candles comprimidos.
+ *
+ * Os candles são codificados em sequência, cada valor em relação ao valor do candle anterior do bloco: o tempo por
+ * delta-of-delta, os volumes e spread por delta e os preços (open, high, low, close) pelo delta dos preços em pontos,
+ * quando todos os preços do bloco possuem até {@link #MAX_DIGITS} casas decimais, ou pelo XOR dos bits do double
+ * (Gorilla). Em séries regulares (ex. M1), o tempo ocupa 1 bit.
+ *
+ * <p>
+ * A leitura é sequencial, por meio de um {@link Cursor}.
+ *
+ * @author Alex Rodin <contato@alexrodin.info>
+ */
+final class RateBlock {
+
+    /**
+     * Quantidade de candles por bloco
+     */
+    static final int SIZE = 512;
+
+    /**
+     * Quantidade máxima de casas decimais dos preços codificados em pontos
+     */
+    static final int MAX_DIGITS = 8;
+
+    /**
+     * Indica, no cabeçalho do bloco, que os preços são codificados pelo XOR dos bits
+     */
+    private static final int XOR = 15;
+
+    private static final double[] SCALES = {1, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8};
+
+    private final long[] words;
+
+    final int count;
+
+    private RateBlock(long[] words, int count) {
+        this.words = words;
+        this.count = count;
+    }
+
+    /**
+     * Consumo de memória do bloco, em bytes
+     *
+     * @return
+     */
+    int bytes() {
+        return words.length * Long.BYTES;
+    }
+
+    /**
+     * Obtém a menor quantidade de casas decimais que representa exatamente todos os preços informados
+     *
+     * @param prices
+     * @param count
+     * @return As casas decimais, ou -1 se os preços não podem ser representados em pontos
+     */
+    static int digits(double[][] prices, int count) {
+        int digits = 0;
+        for (double[] column : prices) {
+            for (int i = 0; i < count; i++) {
+                while (!exact(column[i], digits)) {
+                    if (++digits > MAX_DIGITS) {
+                        return -1;
+                    }
+                }
+            }
+        }
+        return digits;
+    }
+
+    private static boolean exact(double value, int digits) {
+        final double points = Math.rint(value * SCALES[digits]);
+        return Math.abs(points) < (1L << 52)
+                && Double.doubleToRawLongBits(points / SCALES[digits]) == Double.doubleToRawLongBits(value);
+    }
+
+    /**
+     * Estado da codificação, compartilhado pelo codificador e pelo cursor
+     */
+    private abstract static class Codec {
+
+        long[] words;
+
+        /**
+         * Posição atual, em bits
+         */
+        long position;
+
+        long time;
+
+        long delta;
+
+        /**
+         * Últimos preços (open, high, low, close), em pontos ou os bits do double
+         */
+        final long[] prices = new long[4];
+
+        final int[] leading = {-1, -1, -1, -1};
+
+        final int[] trailing = new int[4];
+
+        /**
+         * Casas decimais dos preços, ou {@link #XOR}
+         */
+        int digits;
+
+        long volumeTick;
+
+        long volumeReal;
+
+        long spread;
+    }
+
+    /**
+     * Codifica os candles em um novo bloco
+     */
+    static final class Encoder extends Codec {
+
+        private int count;
+
+        /**
+         * @param digits Casas decimais dos preços (ver {@link RateBlock#digits(double[][], int)}), ou -1 para
+         * codificar os preços pelo XOR dos bits
+         */
+        Encoder(int digits) {
+            words = new long[SIZE * 4];
+            this.digits = digits < 0 ? XOR : digits;
+            write(this.digits, 4);
+        }
+
+        void append(long time, double open, double high, double low, double close, long volumeTick, long volumeReal,
+                int spread) {
+            final long delta = time - this.time;
+            writeLong(delta - this.delta);
+            this.time = time;
+            this.delta = delta;
+
+            writeDouble(0, open);
+            writeDouble(1, high);
+            writeDouble(2, low);
+            writeDouble(3, close);
+
+            writeLong(volumeTick - this.volumeTick);
+            writeLong(volumeReal - this.volumeReal);
+            writeLong(spread - this.spread);
+            this.volumeTick = volumeTick;
+            this.volumeReal = volumeReal;
+            this.spread = spread;
+            count++;
+        }
+
+        RateBlock build() {
+            return new RateBlock(Arrays.copyOf(words, (int) ((position + 63) >>> 6)), count);
+        }
+
+        private void writeDouble(int column, double value) {
+            if (digits != XOR) {
+                final long points = (long) Math.rint(value * SCALES[digits]);
+                writeLong(points - prices[column]);
+                prices[column] = points;
+                return;
+            }
+
+            final long bits = Double.doubleToRawLongBits(value);
+            final long xor = bits ^ prices[column];
+            prices[column] = bits;
+            if (xor == 0) {
+                write(0, 1);
+                return;
+            }
+
+            final int lead = Math.min(Long.numberOfLeadingZeros(xor), 31);
+            final int trail = Long.numberOfTrailingZeros(xor);
+            if (leading[column] >= 0 && lead >= leading[column] && trail >= trailing[column]) {
+                // Os bits significativos cabem na janela do valor anterior
+                write(0b10, 2);
+                write(xor >>> trailing[column], 64 - leading[column] - trailing[column]);
+            } else {
+                final int significant = 64 - lead - trail;
+                leading[column] = lead;
+                trailing[column] = trail;
+                write(0b11, 2);
+                write(lead, 5);
+                write(significant - 1, 6);
+                write(xor >>> trail, significant);
+            }
+        }
+
+        /**
+         * Codifica um inteiro (zigzag) com prefixo de tamanho variável
+         *
+         * @param value
+         */
+        private void writeLong(long value) {
+            final long zigzag = (value << 1) ^ (value >> 63);
+            if (zigzag == 0) {
+                write(0, 1);
+            } else if (zigzag < (1L << 7)) {
+                write(0b10, 2);
+                write(zigzag, 7);
+            } else if (zigzag < (1L << 12)) {
+                write(0b110, 3);
+                write(zigzag, 12);
+            } else if (zigzag < (1L << 20)) {
+                write(0b1110, 4);
+                write(zigzag, 20);
+            } else {
+                write(0b1111, 4);
+                write(zigzag, 64);
+            }
+        }
+
+        private void write(long value, int bits) {
+            final int index = (int) (position >>> 6);
+            if (index + 1 >= words.length) {
+                words = Arrays.copyOf(words, words.length + (words.length >> 1));
+            }
+            if (bits < 64) {
+                value &= (1L << bits) - 1;
+            }
+
+            final int free = 64 - (int) (position & 63);
+            if (bits <= free) {
+                words[index] |= value << (free - bits);
+            } else {
+                words[index] |= value >>> (bits - free);
+                words[index + 1] |= value << (64 - (bits - free));
+            }
+            position += bits;
+        }
+    }
+
+    /**
+     * Leitura sequencial dos candles de um bloco, sem alocações por candle. Pode ser reutilizado em outros blocos por
+     * meio de {@link #reset(RateBlock)}
+     */
+    static final class Cursor extends Codec {
+
+        private int count;
+
+        private int read;
+
+        Cursor() {
+        }
+
+        Cursor(RateBlock block) {
+            reset(block);
+        }
+
+        /**
+         * Posiciona o cursor antes do primeiro candle do bloco informado
+         *
+         * @param block
+         * @return
+         */
+        Cursor reset(RateBlock block) {
+            words = block.words;
+            count = block.count;
+            read = 0;
+            position = 0;
+            time = 0;
+            delta = 0;
+            Arrays.fill(prices, 0);
+            Arrays.fill(leading, -1);
+            Arrays.fill(trailing, 0);
+            volumeTick = 0;
+            volumeReal = 0;
+            spread = 0;
+            digits = (int) read(4);
+            return this;
+        }
+
+        boolean hasNext() {
+            return read < count;
+        }
+
+        /**
+         * Decodifica o próximo candle
+         */
+        void next() {
+            delta += readLong();
+            time += delta;
+
+            readDouble(0);
+            readDouble(1);
+            readDouble(2);
+            readDouble(3);
+
+            volumeTick += readLong();
+            volumeReal += readLong();
+            spread += readLong();
+            read++;
+        }
+
+        long time() {
+            return time;
+        }
+
+        double open() {
+            return price(0);
+        }
+
+        double high() {
+            return price(1);
+        }
+
+        double low() {
+            return price(2);
+        }
+
+        double close() {
+            return price(3);
+        }
+
+        long volumeTick() {
+            return volumeTick;
+        }
+
+        long volumeReal() {
+            return volumeReal;
+        }
+
+        int spread() {
+            return (int) spread;
+        }
+
+        private double price(int column) {
+            if (digits != XOR) {
+                return prices[column] / SCALES[digits];
+            }
+            return Double.longBitsToDouble(prices[column]);
+        }
+
+        private void readDouble(int column) {
+            if (digits != XOR) {
+                prices[column] += readLong();
+                return;
+            }
+
+            if (read(1) == 0) {
+                return;
+            }
+
+            final long xor;
+            if (read(1) == 0) {
+                xor = read(64 - leading[column] - trailing[column]) << trailing[column];
+            } else {
+                final int lead = (int) read(5);
+                final int significant = (int) read(6) + 1;
+                leading[column] = lead;
+                trailing[column] = 64 - lead - significant;
+                xor = read(significant) << trailing[column];
+            }
+            prices[column] ^= xor;
+        }
+
+        private long readLong() {
+            final long zigzag;
+            if (read(1) == 0) {
+                return 0;
+            } else if (read(1) == 0) {
+                zigzag = read(7);
+            } else if (read(1) == 0) {
+                zigzag = read(12);
+            } else if (read(1) == 0) {
+                zigzag = read(20);
+            } else {
+                zigzag = read(64);
+            }
+            return (zigzag >>> 1) ^ -(zigzag & 1);
+        }
+
+        private long read(int bits) {
+            final int index = (int) (position >>> 6);
+            final int free = 64 - (int) (position & 63);
+            final long value;
+            if (bits <= free) {
+                value = words[index] >>> (free - bits);
+            } else {
+                final int low = bits - free;
+                value = (words[index] << low) | (words[index + 1] >>> (64 - low));
+            }
+            position += bits;
+            return bits == 64 ? value : value & ((1L << bits) - 1);
+        }
+    }
+}
@@ -0,0 +1,456 @@
+package com.github.nidorx.jtrade.core.impl;
+
+import com.github.nidorx.jtrade.core.AppliedPrice;
+import com.github.nidorx.jtrade.core.Rate;
+import com.github.nidorx.jtrade.core.RateVisitor;
+import com.github.nidorx.jtrade.core.TimeFrame;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Armazenamento comprimido de {@link Rate}, para manter longos históricos em memória (ex. anos de candles M1).
+ *
+ * Os registros são agrupados em {@link RateBlock blocos} imutáveis de {@link RateBlock#SIZE} candles. O bloco em
+ * formação (tail) é mantido sem compressão em arrays primitivos, permitindo adicionar e substituir o candle mais recente
+ * em O(1); quando completo, é comprimido e passa a ser compartilhado com as visões.
+ *
+ * <p>
+ * O acesso aleatório localiza o bloco pela posição (todos os blocos comprimidos estão completos) e decodifica apenas
+ * até o candle desejado. A inserção de registros antigos recodifica os blocos a partir do bloco afetado.
+ *
+ * @author Alex Rodin <contato@alexrodin.info>
+ */
+final class RateBlocks implements RateStorage {
+
+    /**
+     * Área de decodificação dos blocos, reutilizada pelas leituras de cada thread (a mesma visão pode ser lida por
+     * várias threads)
+     */
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    private String symbol;
+
+    private TimeFrame timeframe;
+
+    /**
+     * Blocos comprimidos, a partir de {@link #first}. Os blocos e as posições já publicadas nunca são alterados
+     */
+    private RateBlock[] blocks = new RateBlock[16];
+
+    private int first = 0;
+
+    private int blockCount = 0;
+
+    /**
+     * Consumo de memória dos blocos mantidos
+     */
+    private long blockBytes = 0;
+
+    private long[] time;
+
+    private double[] open;
+
+    private double[] high;
+
+    private double[] low;
+
+    private double[] close;
+
+    private long[] volumeTick;
+
+    private long[] volumeReal;
+
+    private int[] spread;
+
+    private int tailSize = 0;
+
+    /**
+     * Quantidade de registros descartados no primeiro bloco (ou no tail, quando não existem blocos)
+     */
+    private int head = 0;
+
+    private int size = 0;
+
+    private final boolean concurrent;
+
+    /**
+     * Nas visões, os valores do registro mais recente no momento da criação da visão
+     */
+    private final Rate newest;
+
+    RateBlocks() {
+        this(false);
+    }
+
+    RateBlocks(boolean concurrent) {
+        this.concurrent = concurrent;
+        this.newest = null;
+        allocateTail();
+    }
+
+    /**
+     * Cria uma visão imutável do estado atual, compartilhando os blocos e o tail
+     *
+     * @param source
+     */
+    private RateBlocks(RateBlocks source) {
+        this.concurrent = true;
+        this.symbol = source.symbol;
+        this.timeframe = source.timeframe;
+        this.blocks = source.blocks;
+        this.first = source.first;
+        this.blockCount = source.blockCount;
+        this.blockBytes = source.blockBytes;
+        this.time = source.time;
+        this.open = source.open;
+        this.high = source.high;
+        this.low = source.low;
+        this.close = source.close;
+        this.volumeTick = source.volumeTick;
+        this.volumeReal = source.volumeReal;
+        this.spread = source.spread;
+        this.tailSize = source.tailSize;
+        this.head = source.head;
+        this.size = source.size;
+        this.newest = size > 0 ? source.rate(size - 1) : null;
+    }
+
+    @Override
+    public RateBlocks view() {
+        return concurrent ? new RateBlocks(this) : this;
+    }
+
+    @Override
+    public RateBlocks snapshot() {
+        if (concurrent) {
+            return view();
+        }
+        // Os blocos comprimidos são imutáveis, apenas o tail é copiado
+        final RateBlocks copy = new RateBlocks(this);
+        copy.blocks = blocks.clone();
+        copy.time = Arrays.copyOf(time, tailSize);
+        copy.open = Arrays.copyOf(open, tailSize);
+        copy.high = Arrays.copyOf(high, tailSize);
+        copy.low = Arrays.copyOf(low, tailSize);
+        copy.close = Arrays.copyOf(close, tailSize);
+        copy.volumeTick = Arrays.copyOf(volumeTick, tailSize);
+        copy.volumeReal = Arrays.copyOf(volumeReal, tailSize);
+        copy.spread = Arrays.copyOf(spread, tailSize);
+        return copy;
+    }
+
+    @Override
+    public void insert(int position, Rate rate) {
+        if (position == size) {
+            append(rate);
+        } else {
+            merge(Arrays.asList(rate), new int[]{position});
+        }
+    }
+
+    @Override
+    public void replace(int position, Rate rate) {
+        final int index = tailIndex(position);
+        if (index >= 0) {
+            set(index, rate);
+            return;
+        }
+
+        final int start = blockStart(position);
+        final List<Rate> rates = truncate(start);
+        rates.set(position - start, rate);
+        rates.forEach(this::append);
+    }
+
+    @Override
+    public void merge(List<Rate> rates, int[] positions) {
+        final int count = rates.size();
+        if (count == 0) {
+            return;
+        }
+        if (positions[0] >= size) {
+            // Apenas registros mais recentes
+            rates.forEach(this::append);
+            return;
+        }
+
+        final int start = blockStart(positions[0]);
+        final List<Rate> existing = truncate(start);
+        for (int k = start, i = 0, j = 0; i < existing.size() || j < count; k++) {
+            if (j < count && positions[j] == k) {
+                append(rates.get(j++));
+            } else {
+                append(existing.get(i++));
+            }
+        }
+    }
+
+    @Override
+    public void evict(int count) {
+        head += count;
+        size -= count;
+        while (first < blockCount && head >= RateBlock.SIZE) {
+            blockBytes -= blocks[first].bytes();
+            first++;
+            head -= RateBlock.SIZE;
+        }
+    }
+
+    @Override
+    public Rate rate(int position) {
+        if (newest != null && position == size - 1) {
+            return newest;
+        }
+
+        final int index = tailIndex(position);
+        if (index >= 0) {
+            return new Rate(symbol, Instant.ofEpochSecond(time[index]), open[index], high[index], low[index],
+                    close[index], volumeTick[index], volumeReal[index], spread[index], timeframe);
+        }
+        return decode(position);
+    }
+
+    @Override
+    public int forEach(int index, int count, RateVisitor visitor) {
+        final int total = Math.max(0, Math.min(count, size - index));
+        int i = index;
+        final int end = index + total;
+        if (newest != null && i == 0 && total > 0) {
+            visitor.accept(0, newest.time.getEpochSecond(), newest.open, newest.high, newest.low, newest.close,
+                    newest.volumeTick);
+            i++;
+        }
+
+        // Registros do tail
+        for (int t; i < end && (t = tailIndex(size - 1 - i)) >= 0; i++) {
+            visitor.accept(i, time[t], open[t], high[t], low[t], close[t], volumeTick[t]);
+        }
+
+        if (i == end) {
+            return total;
+        }
+
+        // Blocos comprimidos, decodificados um a um do mais recente para o mais antigo
+        final Scratch scratch = Scratch.acquire();
+        try {
+            final RateBlock.Cursor cursor = scratch.cursor;
+            while (i < end) {
+                final int absolute = head + size - 1 - i;
+                final int offset = absolute % RateBlock.SIZE;
+                cursor.reset(blocks[first + absolute / RateBlock.SIZE]);
+                for (int k = 0; k <= offset; k++) {
+                    cursor.next();
+                    scratch.times[k] = cursor.time();
+                    scratch.opens[k] = cursor.open();
+                    scratch.highs[k] = cursor.high();
+                    scratch.lows[k] = cursor.low();
+                    scratch.closes[k] = cursor.close();
+                    scratch.volumes[k] = cursor.volumeTick();
+                }
+                for (int k = offset; k >= 0 && i < end; k--, i++) {
+                    visitor.accept(i, scratch.times[k], scratch.opens[k], scratch.highs[k], scratch.lows[k],
+                            scratch.closes[k], scratch.volumes[k]);
+                }
+            }
+        } finally {
+            scratch.release();
+        }
+        return total;
+    }
+
+    @Override
+    public double[] copy(AppliedPrice price, int index, int count) {
+        final double[] out = new double[Math.max(0, Math.min(count, size - index))];
+        if (price == AppliedPrice.OPEN) {
+            forEach(index, count, (i, t, o, h, l, c, v) -> out[i - index] = o);
+        } else if (price == AppliedPrice.HIGH) {
+            forEach(index, count, (i, t, o, h, l, c, v) -> out[i - index] = h);
+        } else if (price == AppliedPrice.LOW) {
+            forEach(index, count, (i, t, o, h, l, c, v) -> out[i - index] = l);
+        } else if (price == AppliedPrice.CLOSE) {
+            forEach(index, count, (i, t, o, h, l, c, v) -> out[i - index] = c);
+        } else {
+            throw new IllegalArgumentException("Only OPEN, HIGH, LOW and CLOSE are stored");
+        }
+        return out;
+    }
+
+    @Override
+    public int bytesPerItem() {
+        if (size <= 0) {
+            return RateColumns.BYTES;
+        }
+        final long bytes = blockBytes + (long) RateColumns.BYTES * RateBlock.SIZE;
+        return (int) Math.max(1, (bytes + size - 1) / size);
+    }
+
+    /**
+     * Obtém a posição no tail do registro na posição cronológica informada
+     *
+     * @param position
+     * @return A posição no tail, ou -1 se o registro estiver em um bloco comprimido
+     */
+    private int tailIndex(int position) {
+        final int index = head + position - (blockCount - first) * RateBlock.SIZE;
+        return index >= 0 && index < tailSize ? index : -1;
+    }
+
+    /**
+     * Obtém a posição cronológica do primeiro registro do bloco que contém a posição informada (negativa quando o bloco
+     * possui registros descartados)
+     *
+     * @param position
+     * @return
+     */
+    private int blockStart(int position) {
+        return (head + position) / RateBlock.SIZE * RateBlock.SIZE - head;
+    }
+
+    /**
+     * Remove os registros a partir do início do bloco informado
+     *
+     * @param start Posição cronológica do início do bloco
+     * @return Os registros removidos, em ordem cronológica
+     */
+    private List<Rate> truncate(int start) {
+        final int block = (head + start) / RateBlock.SIZE;
+        final List<Rate> out = new ArrayList<>(size - start);
+        for (int position = start; position < size; position++) {
+            out.add(rate(position));
+        }
+
+        for (int b = first + block; b < blockCount; b++) {
+            blockBytes -= blocks[b].bytes();
+        }
+        // Novos arrays, os blocos e o tail anteriores permanecem inalterados para as visões publicadas
+        final RateBlock[] copy = new RateBlock[blocks.length];
+        System.arraycopy(blocks, first, copy, 0, block);
+        blocks = copy;
+        blockCount = block;
+        first = 0;
+        allocateTail();
+        tailSize = 0;
+        size = start;
+        return out;
+    }
+
+    /**
+     * Decodifica o registro de um bloco comprimido
+     *
+     * @param position
+     * @return
+     */
+    private Rate decode(int position) {
+        final int absolute = head + position;
+        final RateBlock.Cursor cursor = new RateBlock.Cursor(blocks[first + absolute / RateBlock.SIZE]);
+        for (int i = absolute % RateBlock.SIZE; i >= 0; i--) {
+            cursor.next();
+        }
+        return new Rate(symbol, Instant.ofEpochSecond(cursor.time()), cursor.open(), cursor.high(), cursor.low(),
+                cursor.close(), cursor.volumeTick(), cursor.volumeReal(), cursor.spread(), timeframe);
+    }
+
+    /**
+     * Adiciona o registro após o mais recente, comprimindo o tail quando completo
+     *
+     * @param rate
+     */
+    private void append(Rate rate) {
+        if (tailSize == RateBlock.SIZE) {
+            seal();
+        }
+        set(tailSize++, rate);
+        size++;
+    }
+
+    private void seal() {
+        final RateBlock.Encoder encoder = new RateBlock.Encoder(
+                RateBlock.digits(new double[][]{open, high, low, close}, tailSize));
+        for (int i = 0; i < tailSize; i++) {
+            encoder.append(time[i], open[i], high[i], low[i], close[i], volumeTick[i], volumeReal[i], spread[i]);
+        }
+        final RateBlock block = encoder.build();
+
+        if (blockCount == blocks.length) {
+            // Novo array, compactando os blocos descartados
+            final int count = blockCount - first;
+            final RateBlock[] copy = new RateBlock[Math.max(16, count * 2)];
+            System.arraycopy(blocks, first, copy, 0, count);
+            blocks = copy;
+            blockCount = count;
+            first = 0;
+        }
+        blocks[blockCount++] = block;
+        blockBytes += block.bytes();
+
+        allocateTail();
+        tailSize = 0;
+    }
+
+    private void allocateTail() {
+        time = new long[RateBlock.SIZE];
+        open = new double[RateBlock.SIZE];
+        high = new double[RateBlock.SIZE];
+        low = new double[RateBlock.SIZE];
+        close = new double[RateBlock.SIZE];
+        volumeTick = new long[RateBlock.SIZE];
+        volumeReal = new long[RateBlock.SIZE];
+        spread = new int[RateBlock.SIZE];
+    }
+
+    private void set(int index, Rate rate) {
+        if (symbol == null) {
+            symbol = rate.symbol;
+            timeframe = rate.timeframe;
+        }
+
+        time[index] = rate.time.getEpochSecond();
+        open[index] = rate.open;
+        high[index] = rate.high;
+        low[index] = rate.low;
+        close[index] = rate.close;
+        volumeTick[index] = rate.volumeTick;
+        volumeReal[index] = rate.volumeReal;
+        spread[index] = rate.spread;
+    }
+
+    /**
+     * Arrays e cursor usados na decodificação dos blocos.
+     *
+     * Quando um visitante consulta o mesmo TimeSeries durante a iteração, a área da thread está em uso e uma nova área
+     * é criada para a consulta
+     */
+    private static final class Scratch {
+
+        final RateBlock.Cursor cursor = new RateBlock.Cursor();
+
+        final long[] times = new long[RateBlock.SIZE];
+
+        final double[] opens = new double[RateBlock.SIZE];
+
+        final double[] highs = new double[RateBlock.SIZE];
+
+        final double[] lows = new double[RateBlock.SIZE];
+
+        final double[] closes = new double[RateBlock.SIZE];
+
+        final long[] volumes = new long[RateBlock.SIZE];
+
+        private boolean busy;
+
+        static Scratch acquire() {
+            Scratch scratch = SCRATCH.get();
+            if (scratch.busy) {
+                scratch = new Scratch();
+            }
+            scratch.busy = true;
+            return scratch;
+        }
+
+        void release() {
+            busy = false;
+        }
+    }
+}
@@ -0,0 +1,308 @@
+package com.github.nidorx.jtrade.core.impl;
+
+import com.github.nidorx.jtrade.core.AppliedPrice;
+import com.github.nidorx.jtrade.core.Rate;
+import com.github.nidorx.jtrade.core.RateVisitor;
+import com.github.nidorx.jtrade.core.TimeFrame;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Armazenamento de {@link Rate} fora do heap, em um {@link ByteBuffer#allocateDirect(int) buffer direto}.
+ *
+ * Os registros são mantidos em ordem cronológica, um registro de {@value #RECORD_BYTES} bytes por candle (<code>time,
+ * open, high, low, close, volumeTick, volumeReal, spread</code>, o mesmo formato do {@link RateFile}). Longos históricos
+ * deixam de ser percorridos pelo coletor de lixo, apenas o objeto do buffer permanece no heap.
+ *
+ * <p>
+ * Assim como no {@link RateColumns}, o buffer possui um deslocamento inicial (head) que permite descartar os registros
+ * mais antigos em O(1). No modo concorrente, as alterações que modificariam posições já publicadas são feitas em um novo
+ * buffer. Fora do modo concorrente não existem visões publicadas, o espaço dos registros descartados é reaproveitado
+ * no próprio buffer, sem novas alocações.
+ *
+ * <p>
+ * Não existe liberação explícita: a memória de um buffer direto é devolvida ao sistema apenas quando o coletor de lixo
+ * descarta o objeto do buffer, após nenhuma visão referenciá-lo. Ao descartar todos os registros, o buffer é
+ * substituído por um buffer mínimo.
+ *
+ * @author Alex Rodin <contato@alexrodin.info>
+ */
+final class RateBuffers implements RateStorage {
+
+    static final int RECORD_BYTES = 7 * Long.BYTES + Integer.BYTES;
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * Quantidade máxima de registros em um buffer (endereçamento por int)
+     */
+    private static final int MAX_CAPACITY = Integer.MAX_VALUE / RECORD_BYTES;
+
+    private String symbol;
+
+    private TimeFrame timeframe;
+
+    private ByteBuffer buffer;
+
+    /**
+     * Capacidade do buffer, em registros
+     */
+    private int capacity;
+
+    /**
+     * Posição do registro mais antigo no buffer
+     */
+    private int head = 0;
+
+    private int size = 0;
+
+    private final boolean concurrent;
+
+    /**
+     * Nas visões, os valores do registro mais recente no momento da criação da visão
+     */
+    private final Rate newest;
+
+    RateBuffers() {
+        this(false);
+    }
+
+    RateBuffers(boolean concurrent) {
+        this.concurrent = concurrent;
+        this.newest = null;
+        allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Cria uma visão imutável do estado atual, compartilhando o buffer
+     *
+     * @param source
+     */
+    private RateBuffers(RateBuffers source) {
+        this.concurrent = true;
+        this.symbol = source.symbol;
+        this.timeframe = source.timeframe;
+        this.buffer = source.buffer;
+        this.capacity = source.capacity;
+        this.head = source.head;
+        this.size = source.size;
+        this.newest = size > 0 ? source.rate(size - 1) : null;
+    }
+
+    @Override
+    public RateBuffers view() {
+        return concurrent ? new RateBuffers(this) : this;
+    }
+
+    @Override
+    public RateBuffers snapshot() {
+        if (concurrent) {
+            return view();
+        }
+        final RateBuffers copy = new RateBuffers(this);
+        copy.relocate(Math.max(1, size));
+        return copy;
+    }
+
+    @Override
+    public void insert(int position, Rate rate) {
+        if (position == size) {
+            ensureCapacity(size + 1);
+            set(head + size, rate);
+            size++;
+        } else {
+            merge(Collections.singletonList(rate), new int[]{position});
+        }
+    }
+
+    @Override
+    public void replace(int position, Rate rate) {
+        set(head + position, rate);
+    }
+
+    @Override
+    public void merge(List<Rate> rates, int[] positions) {
+        final int count = rates.size();
+        if (concurrent && count > 0 && positions[0] < size) {
+            relocate(length(size + count));
+        } else {
+            ensureCapacity(size + count);
+        }
+
+        // Em uma única passagem, do mais recente para o mais antigo
+        for (int i = head + size - 1, j = count - 1, k = head + size + count - 1; j >= 0; k--) {
+            if (positions[j] == k - head) {
+                set(k, rates.get(j--));
+            } else {
+                move(i--, k);
+            }
+        }
+        size += count;
+    }
+
+    @Override
+    public void evict(int count) {
+        head += count;
+        size -= count;
+        if (size == 0 && capacity > INITIAL_CAPACITY) {
+            // O buffer anterior é devolvido quando o coletor de lixo descartá-lo
+            allocate(INITIAL_CAPACITY);
+            head = 0;
+        }
+    }
+
+    @Override
+    public Rate rate(int position) {
+        if (newest != null && position == size - 1) {
+            return newest;
+        }
+        final int offset = (head + position) * RECORD_BYTES;
+        return new Rate(symbol, Instant.ofEpochSecond(buffer.getLong(offset)),
+                buffer.getDouble(offset + 8),
+                buffer.getDouble(offset + 16),
+                buffer.getDouble(offset + 24),
+                buffer.getDouble(offset + 32),
+                buffer.getLong(offset + 40),
+                buffer.getLong(offset + 48),
+                buffer.getInt(offset + 56),
+                timeframe
+        );
+    }
+
+    @Override
+    public int forEach(int index, int count, RateVisitor visitor) {
+        final int total = Math.max(0, Math.min(count, size - index));
+        int i = index;
+        if (newest != null && i == 0 && total > 0) {
+            visitor.accept(0, newest.time.getEpochSecond(), newest.open, newest.high, newest.low, newest.close,
+                    newest.volumeTick);
+            i++;
+        }
+        for (int offset = (head + size - 1 - i) * RECORD_BYTES; i < index + total; i++, offset -= RECORD_BYTES) {
+            visitor.accept(i, buffer.getLong(offset), buffer.getDouble(offset + 8), buffer.getDouble(offset + 16),
+                    buffer.getDouble(offset + 24), buffer.getDouble(offset + 32), buffer.getLong(offset + 40));
+        }
+        return total;
+    }
+
+    @Override
+    public double[] copy(AppliedPrice price, int index, int count) {
+        final int field;
+        if (price == AppliedPrice.OPEN) {
+            field = 8;
+        } else if (price == AppliedPrice.HIGH) {
+            field = 16;
+        } else if (price == AppliedPrice.LOW) {
+            field = 24;
+        } else if (price == AppliedPrice.CLOSE) {
+            field = 32;
+        } else {
+            throw new IllegalArgumentException("Only OPEN, HIGH, LOW and CLOSE are stored");
+        }
+
+        final double[] out = new double[Math.max(0, Math.min(count, size - index))];
+        for (int i = 0, offset = (head + size - 1 - index) * RECORD_BYTES + field; i < out.length;
+                i++, offset -= RECORD_BYTES) {
+            out[i] = buffer.getDouble(offset);
+        }
+        if (newest != null && index == 0 && out.length > 0) {
+            out[0] = price.apply(newest);
+        }
+        return out;
+    }
+
+    @Override
+    public int bytesPerItem() {
+        return RECORD_BYTES;
+    }
+
+    private void set(int record, Rate rate) {
+        if (symbol == null) {
+            symbol = rate.symbol;
+            timeframe = rate.timeframe;
+        }
+
+        final int offset = record * RECORD_BYTES;
+        buffer.putLong(offset, rate.time.getEpochSecond());
+        buffer.putDouble(offset + 8, rate.open);
+        buffer.putDouble(offset + 16, rate.high);
+        buffer.putDouble(offset + 24, rate.low);
+        buffer.putDouble(offset + 32, rate.close);
+        buffer.putLong(offset + 40, rate.volumeTick);
+        buffer.putLong(offset + 48, rate.volumeReal);
+        buffer.putInt(offset + 56, rate.spread);
+    }
+
+    private void move(int from, int to) {
+        final int source = from * RECORD_BYTES;
+        final int target = to * RECORD_BYTES;
+        for (int i = 0; i < RECORD_BYTES - Integer.BYTES; i += Long.BYTES) {
+            buffer.putLong(target + i, buffer.getLong(source + i));
+        }
+        buffer.putInt(target + 56, buffer.getInt(source + 56));
+    }
+
+    /**
+     * Garante espaço para a quantidade de registros após o head.
+     *
+     * No modo concorrente os registros são copiados para um novo buffer, o buffer anterior permanece inalterado para as
+     * visões publicadas. Do contrário, quando o tamanho do buffer é mantido, os registros são movidos para o início do
+     * próprio buffer
+     *
+     * @param records
+     */
+    private void ensureCapacity(int records) {
+        if (head + records <= capacity) {
+            return;
+        }
+        final int length = length(records);
+        if (!concurrent && length == capacity) {
+            compact();
+        } else {
+            relocate(length);
+        }
+    }
+
+    /**
+     * Mantém o tamanho do buffer quando o espaço dos registros descartados for suficiente, do contrário cresce 50%
+     *
+     * @param records
+     * @return
+     */
+    private int length(int records) {
+        if (records > MAX_CAPACITY) {
+            throw new IllegalStateException("Off-heap TimeSeries is limited to " + MAX_CAPACITY + " records");
+        }
+        return records <= capacity - (capacity >> 2)
+                ? capacity
+                : (int) Math.min(MAX_CAPACITY, Math.max(records, capacity + (long) (capacity >> 1)));
+    }
+
+    private void relocate(int length) {
+        final ByteBuffer source = buffer.duplicate();
+        source.position(head * RECORD_BYTES);
+        source.limit((head + size) * RECORD_BYTES);
+        allocate(length);
+        buffer.put(source);
+        head = 0;
+    }
+
+    /**
+     * Move os registros para o início do buffer, reaproveitando o espaço dos registros descartados
+     */
+    private void compact() {
+        buffer.position(head * RECORD_BYTES);
+        buffer.limit((head + size) * RECORD_BYTES);
+        buffer.compact();
+        buffer.clear();
+        head = 0;
+    }
+
+    private void allocate(int length) {
+        buffer = ByteBuffer.allocateDirect(length * RECORD_BYTES).order(ByteOrder.nativeOrder());
+        capacity = length;
+    }
+}
@@ -0,0 +1,362 @@
+package com.github.nidorx.jtrade.core.impl;
+
+import com.github.nidorx.jtrade.core.AppliedPrice;
+import com.github.nidorx.jtrade.core.Rate;
+import com.github.nidorx.jtrade.core.RateVisitor;
+import com.github.nidorx.jtrade.core.TimeFrame;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Armazenamento colunar de {@link Rate} em arrays primitivos.
+ *
+ * Os valores são mantidos em ordem cronológica (posição 0 = registro mais antigo), cada propriedade do Rate em um
+ * array próprio, evitando a alocação de um objeto por candle. Assim como no TimeSeries, os arrays possuem um
+ * deslocamento inicial (head) que permite descartar os registros mais antigos em O(1).
+ *
+ * <p>
+ * No modo concorrente, as alterações que modificariam posições já publicadas são feitas em cópias dos arrays, as
+ * visões obtidas por {@link #view()} permanecem consistentes para os leitores.
+ *
+ * @author Alex Rodin <contato@alexrodin.info>
+ */
+final class RateColumns implements RateStorage {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * Todos os registros de um TimeSeries pertencem ao mesmo símbolo e timeframe
+     */
+    private String symbol;
+
+    private TimeFrame timeframe;
+
+    long[] time = new long[INITIAL_CAPACITY];
+
+    double[] open = new double[INITIAL_CAPACITY];
+
+    double[] high = new double[INITIAL_CAPACITY];
+
+    double[] low = new double[INITIAL_CAPACITY];
+
+    double[] close = new double[INITIAL_CAPACITY];
+
+    long[] volumeTick = new long[INITIAL_CAPACITY];
+
+    long[] volumeReal = new long[INITIAL_CAPACITY];
+
+    int[] spread = new int[INITIAL_CAPACITY];
+
+    /**
+     * Posição física do registro mais antigo nos arrays
+     */
+    int head = 0;
+
+    /**
+     * Quantidade de registros armazenados
+     */
+    int size = 0;
+
+    /**
+     * Estimativa do consumo de memória por registro
+     */
+    static final int BYTES = 7 * Long.BYTES + Integer.BYTES;
+
+    /**
+     * Quando verdadeiro, as posições publicadas nunca são modificadas (copy-on-write)
+     */
+    private final boolean concurrent;
+
+    /**
+     * Nas visões, os valores do registro mais recente no momento da criação da visão. O registro mais recente pode ser
+     * {@link #replace(int, com.github.nidorx.jtrade.core.Rate) substituído} pelo escritor
+     */
+    private final double[] newest;
+
+    RateColumns() {
+        this(false);
+    }
+
+    RateColumns(boolean concurrent) {
+        this.concurrent = concurrent;
+        this.newest = null;
+    }
+
+    /**
+     * Cria uma visão imutável do estado atual, compartilhando os arrays
+     *
+     * @param source
+     */
+    private RateColumns(RateColumns source) {
+        this.concurrent = true;
+        this.symbol = source.symbol;
+        this.timeframe = source.timeframe;
+        this.time = source.time;
+        this.open = source.open;
+        this.high = source.high;
+        this.low = source.low;
+        this.close = source.close;
+        this.volumeTick = source.volumeTick;
+        this.volumeReal = source.volumeReal;
+        this.spread = source.spread;
+        this.head = source.head;
+        this.size = source.size;
+        if (size > 0) {
+            final int i = head + size - 1;
+            this.newest = new double[]{open[i], high[i], low[i], close[i], volumeTick[i], volumeReal[i], spread[i]};
+        } else {
+            this.newest = null;
+        }
+    }
+
+    @Override
+    public RateColumns view() {
+        return concurrent ? new RateColumns(this) : this;
+    }
+
+    @Override
+    public RateColumns snapshot() {
+        if (concurrent) {
+            return view();
+        }
+        final RateColumns copy = new RateColumns(this);
+        copy.relocate(size, true);
+        return copy;
+    }
+
+    @Override
+    public void insert(int position, Rate rate) {
+        if (position < size && concurrent) {
+            detach(size + 1);
+        } else {
+            ensureCapacity(size + 1);
+        }
+
+        final int index = head + position;
+        final int moved = size - position;
+        if (moved > 0) {
+            System.arraycopy(time, index, time, index + 1, moved);
+            System.arraycopy(open, index, open, index + 1, moved);
+            System.arraycopy(high, index, high, index + 1, moved);
+            System.arraycopy(low, index, low, index + 1, moved);
+            System.arraycopy(close, index, close, index + 1, moved);
+            System.arraycopy(volumeTick, index, volumeTick, index + 1, moved);
+            System.arraycopy(volumeReal, index, volumeReal, index + 1, moved);
+            System.arraycopy(spread, index, spread, index + 1, moved);
+        }
+
+        set(index, rate);
+        size++;
+    }
+
+    @Override
+    public void replace(int position, Rate rate) {
+        set(head + position, rate);
+    }
+
+    @Override
+    public void merge(List<Rate> rates, int[] positions) {
+        final int count = rates.size();
+        if (concurrent && count > 0 && positions[0] < size) {
+            detach(size + count);
+        } else {
+            ensureCapacity(size + count);
+        }
+
+        for (int i = head + size - 1, j = count - 1, k = head + size + count - 1; j >= 0; k--) {
+            if (positions[j] == k - head) {
+                set(k, rates.get(j--));
+            } else {
+                move(i--, k);
+            }
+        }
+        size += count;
+    }
+
+    @Override
+    public void evict(int count) {
+        head += count;
+        size -= count;
+    }
+
+    @Override
+    public Rate rate(int position) {
+        final int i = head + position;
+        if (newest != null && position == size - 1) {
+            return new Rate(symbol, Instant.ofEpochSecond(time[i]), newest[0], newest[1], newest[2], newest[3],
+                    (long) newest[4], (long) newest[5], (int) newest[6], timeframe);
+        }
+        return new Rate(symbol, Instant.ofEpochSecond(time[i]), open[i], high[i], low[i], close[i], volumeTick[i],
+                volumeReal[i], spread[i], timeframe);
+    }
+
+    @Override
+    public double[] copy(AppliedPrice price, int index, int count) {
+        return copy(column(price), index, count);
+    }
+
+    @Override
+    public int bytesPerItem() {
+        return BYTES;
+    }
+
+    /**
+     * Copia os valores de uma coluna a partir do indice informado, na ordenação do TimeSeries (indice 0 = mais
+     * recente)
+     *
+     * @param column
+     * @param index
+     * @param count
+     * @return
+     */
+    private double[] copy(double[] column, int index, int count) {
+        final int total = Math.max(0, Math.min(count, size - index));
+        final double[] out = new double[total];
+        for (int i = 0, position = head + size - 1 - index; i < total; i++, position--) {
+            out[i] = column[position];
+        }
+        if (newest != null && index == 0 && total > 0) {
+            out[0] = newest(column);
+        }
+        return out;
+    }
+
+    @Override
+    public int forEach(int index, int count, RateVisitor visitor) {
+        final int total = Math.max(0, Math.min(count, size - index));
+        int i = index;
+        int position = head + size - 1 - index;
+        if (newest != null && i == 0 && total > 0) {
+            visitor.accept(0, time[position], newest[0], newest[1], newest[2], newest[3], (long) newest[4]);
+            i++;
+            position--;
+        }
+        for (final int end = index + total; i < end; i++, position--) {
+            visitor.accept(i, time[position], open[position], high[position], low[position], close[position],
+                    volumeTick[position]);
+        }
+        return total;
+    }
+
+    private double[] column(AppliedPrice price) {
+        if (price == AppliedPrice.OPEN) {
+            return open;
+        } else if (price == AppliedPrice.HIGH) {
+            return high;
+        } else if (price == AppliedPrice.LOW) {
+            return low;
+        } else if (price == AppliedPrice.CLOSE) {
+            return close;
+        }
+        throw new IllegalArgumentException("Only OPEN, HIGH, LOW and CLOSE are stored");
+    }
+
+    private double newest(double[] column) {
+        if (column == open) {
+            return newest[0];
+        } else if (column == high) {
+            return newest[1];
+        } else if (column == low) {
+            return newest[2];
+        }
+        return newest[3];
+    }
+
+    /**
+     * Define os valores na posição física informada
+     *
+     * @param position
+     * @param rate
+     */
+    private void set(int position, Rate rate) {
+        if (symbol == null) {
+            symbol = rate.symbol;
+            timeframe = rate.timeframe;
+        }
+
+        time[position] = rate.time.getEpochSecond();
+        open[position] = rate.open;
+        high[position] = rate.high;
+        low[position] = rate.low;
+        close[position] = rate.close;
+        volumeTick[position] = rate.volumeTick;
+        volumeReal[position] = rate.volumeReal;
+        spread[position] = rate.spread;
+    }
+
+    private void move(int from, int to) {
+        time[to] = time[from];
+        open[to] = open[from];
+        high[to] = high[from];
+        low[to] = low[from];
+        close[to] = close[from];
+        volumeTick[to] = volumeTick[from];
+        volumeReal[to] = volumeReal[from];
+        spread[to] = spread[from];
+    }
+
+    /**
+     * Garante espaço para a quantidade de registros após o head, compactando os arrays quando o espaço dos registros
+     * descartados for suficiente
+     *
+     * @param capacity
+     */
+    private void ensureCapacity(int capacity) {
+        if (head + capacity <= time.length) {
+            return;
+        }
+
+        relocate(length(capacity), concurrent);
+    }
+
+    /**
+     * Copia os registros para novos arrays, os arrays anteriores permanecem inalterados para as visões publicadas
+     *
+     * @param capacity
+     */
+    private void detach(int capacity) {
+        relocate(length(capacity), true);
+    }
+
+    /**
+     * Mantém o tamanho dos arrays quando o espaço dos registros descartados for suficiente, do contrário cresce 50%
+     *
+     * @param capacity
+     * @return
+     */
+    private int length(int capacity) {
+        return capacity <= time.length - (time.length >> 2)
+                ? time.length
+                : Math.max(capacity, time.length + (time.length >> 1));
+    }
+
+    private void relocate(int length, boolean copy) {
+        time = relocate(time, length, copy);
+        open = relocate(open, length, copy);
+        high = relocate(high, length, copy);
+        low = relocate(low, length, copy);
+        close = relocate(close, length, copy);
+        volumeTick = relocate(volumeTick, length, copy);
+        volumeReal = relocate(volumeReal, length, copy);
+        spread = relocate(spread, length, copy);
+        head = 0;
+    }
+
+    private long[] relocate(long[] column, int length, boolean copy) {
+        final long[] out = !copy && length == column.length ? column : new long[length];
+        System.arraycopy(column, head, out, 0, size);
+        return out;
+    }
+
+    private double[] relocate(double[] column, int length, boolean copy) {
+        final double[] out = !copy && length == column.length ? column : new double[length];
+        System.arraycopy(column, head, out, 0, size);
+        return out;
+    }
+
+    private int[] relocate(int[] column, int length, boolean copy) {
+        final int[] out = !copy && length == column.length ? column : new int[length];
+        System.arraycopy(column, head, out, 0, size);
+        return out;
+    }
+}
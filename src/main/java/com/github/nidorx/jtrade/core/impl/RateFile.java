@@ -0,0 +1,268 @@
+package com.github.nidorx.jtrade.core.impl;
+
+import com.github.nidorx.jtrade.core.Rate;
+import com.github.nidorx.jtrade.core.TimeFrame;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Persistência em disco dos candles de um TimeSeries, evitando re-consultas ao broker após o reinício.
+ *
+ * Arquivo binário, somente de inclusão (append-only), com registros de tamanho fixo acessados através de um
+ * {@link MappedByteBuffer}. Cada arquivo armazena um único símbolo e timeframe de um broker.
+ *
+ * <p>
+ * Formato: cabeçalho de {@value #HEADER_BYTES} bytes (<code>MAGIC, VERSION, RECORD_BYTES, reservado, count</code>)
+ * seguido dos registros em ordem cronológica (<code>time (epoch seconds), open, high, low, close, volumeTick,
+ * volumeReal, spread</code>). A quantidade de registros é atualizada no cabeçalho após a escrita do registro, um
+ * registro incompleto nunca é lido.
+ *
+ * @author Alex Rodin <contato@alexrodin.info>
+ */
+public final class RateFile implements Closeable {
+
+    private static final int MAGIC = 0x4A545253;
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER_BYTES = 24;
+
+    private static final int RECORD_BYTES = 7 * Long.BYTES + Integer.BYTES;
+
+    private static final int COUNT_OFFSET = 16;
+
+    /**
+     * Quantidade de registros reservada a cada crescimento do mapeamento
+     */
+    private static final int GROWTH = 4096;
+
+    /**
+     * Quantidade padrão de inclusões entre as sincronizações com o disco
+     */
+    public static final int DEFAULT_FLUSH_EVERY = 64;
+
+    private final String symbol;
+
+    private final TimeFrame timeframe;
+
+    private final FileChannel channel;
+
+    private final int flushEvery;
+
+    private MappedByteBuffer buffer;
+
+    private long count;
+
+    /**
+     * Instante (epoch seconds) do registro mais recente
+     */
+    private long newest = Long.MIN_VALUE;
+
+    /**
+     * Quantidade de inclusões ainda não sincronizadas com o disco
+     */
+    private int pending = 0;
+
+    private RateFile(String symbol, TimeFrame timeframe, FileChannel channel, int flushEvery) {
+        this.symbol = symbol;
+        this.timeframe = timeframe;
+        this.channel = channel;
+        this.flushEvery = Math.max(1, flushEvery);
+    }
+
+    /**
+     * Abre (ou cria) o arquivo de candles
+     *
+     * @param path
+     * @param symbol
+     * @param timeframe
+     * @return
+     * @throws IOException
+     */
+    public static RateFile open(Path path, String symbol, TimeFrame timeframe) throws IOException {
+        return open(path, symbol, timeframe, DEFAULT_FLUSH_EVERY);
+    }
+
+    /**
+     * Abre (ou cria) o arquivo de candles
+     *
+     * @param path
+     * @param symbol
+     * @param timeframe
+     * @param flushEvery Quantidade de inclusões entre as sincronizações com o disco. As inclusões são visíveis para o
+     * sistema operacional imediatamente, a sincronização garante a persistência em caso de falha do sistema
+     * @return
+     * @throws IOException
+     */
+    public static RateFile open(Path path, String symbol, TimeFrame timeframe, int flushEvery) throws IOException {
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+
+        final FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        final RateFile file = new RateFile(symbol, timeframe, channel, flushEvery);
+        try {
+            file.init();
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+        return file;
+    }
+
+    /**
+     * Quantidade de registros persistidos
+     *
+     * @return
+     */
+    public synchronized long size() {
+        return count;
+    }
+
+    /**
+     * Obtém todos os registros persistidos, em ordem cronológica
+     *
+     * @return
+     */
+    public synchronized List<Rate> read() {
+        final List<Rate> out = new ArrayList<>((int) Math.min(count, Integer.MAX_VALUE));
+        for (long i = 0; i < count; i++) {
+            out.add(read(offset(i)));
+        }
+        return out;
+    }
+
+    /**
+     * Inclui o candle no final do arquivo.
+     *
+     * Um candle com o mesmo instante do registro mais recente substitui este registro (atualização do candle).
+     * Candles mais antigos são ignorados, o arquivo é somente de inclusão
+     *
+     * @param rate
+     * @return Verdadeiro se o candle foi persistido
+     * @throws IOException
+     */
+    public synchronized boolean append(Rate rate) throws IOException {
+        final long time = rate.time.getEpochSecond();
+        if (time < newest) {
+            return false;
+        }
+
+        if (time == newest) {
+            write(offset(count - 1), time, rate);
+        } else {
+            ensureCapacity(count + 1);
+            write(offset(count), time, rate);
+            count++;
+            newest = time;
+            buffer.putLong(COUNT_OFFSET, count);
+        }
+
+        if (++pending >= flushEvery) {
+            flush();
+        }
+        return true;
+    }
+
+    /**
+     * Sincroniza as inclusões pendentes com o disco
+     */
+    public synchronized void flush() {
+        if (pending > 0) {
+            buffer.force();
+            pending = 0;
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (!channel.isOpen()) {
+            return;
+        }
+        flush();
+        channel.close();
+    }
+
+    private void init() throws IOException {
+        final long length = channel.size();
+        if (length == 0) {
+            map(GROWTH);
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putInt(8, RECORD_BYTES);
+            buffer.putLong(COUNT_OFFSET, 0);
+            return;
+        }
+
+        if (length < HEADER_BYTES) {
+            throw new IOException("Invalid rate file, header is truncated");
+        }
+
+        map(Math.max(GROWTH, (length - HEADER_BYTES) / RECORD_BYTES));
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(8) != RECORD_BYTES) {
+            throw new IOException("Invalid rate file, unknown format");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Invalid rate file, unsupported version " + buffer.getInt(4));
+        }
+
+        // Protege contra arquivo truncado externamente
+        count = Math.min(buffer.getLong(COUNT_OFFSET), (length - HEADER_BYTES) / RECORD_BYTES);
+        if (count > 0) {
+            newest = buffer.getLong(offset(count - 1));
+        }
+    }
+
+    private void ensureCapacity(long records) throws IOException {
+        if (HEADER_BYTES + records * RECORD_BYTES > buffer.capacity()) {
+            map(Math.max(records, count + Math.max(GROWTH, count >> 1)));
+        }
+    }
+
+    private void map(long records) throws IOException {
+        final long length = HEADER_BYTES + records * RECORD_BYTES;
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Rate file exceeds the mappable size");
+        }
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+    }
+
+    private Rate read(int offset) {
+        return new Rate(
+                symbol,
+                Instant.ofEpochSecond(buffer.getLong(offset)),
+                buffer.getDouble(offset + 8),
+                buffer.getDouble(offset + 16),
+                buffer.getDouble(offset + 24),
+                buffer.getDouble(offset + 32),
+                buffer.getLong(offset + 40),
+                buffer.getLong(offset + 48),
+                buffer.getInt(offset + 56),
+                timeframe
+        );
+    }
+
+    private void write(int offset, long time, Rate rate) {
+        buffer.putLong(offset, time);
+        buffer.putDouble(offset + 8, rate.open);
+        buffer.putDouble(offset + 16, rate.high);
+        buffer.putDouble(offset + 24, rate.low);
+        buffer.putDouble(offset + 32, rate.close);
+        buffer.putLong(offset + 40, rate.volumeTick);
+        buffer.putLong(offset + 48, rate.volumeReal);
+        buffer.putInt(offset + 56, rate.spread);
+    }
+
+    private static int offset(long record) {
+        return (int) (HEADER_BYTES + record * RECORD_BYTES);
+    }
+}
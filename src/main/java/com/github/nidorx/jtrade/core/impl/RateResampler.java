@@ -0,0 +1,156 @@
+package com.github.nidorx.jtrade.core.impl;
+
+import com.github.nidorx.jtrade.core.Rate;
+import com.github.nidorx.jtrade.core.TimeFrame;
+import com.github.nidorx.jtrade.core.TimeSeriesUpdate;
+import com.github.nidorx.jtrade.util.function.Cancelable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Mantém um TimeSeries de timeframe maior construído a partir de um TimeSeries base (ex. H1 a partir de M1).
+ *
+ * Os novos candles do TimeSeries base são agrupados incrementalmente, apenas no final do TimeSeries derivado. O candle
+ * mais recente do TimeSeries base (que pode ser substituído enquanto está em formação) não é incorporado ao agrupamento,
+ * mas apenas simulado sobre uma cópia, permitindo atualizar o candle em formação do TimeSeries derivado em O(1).
+ *
+ * <p>
+ * Quando o TimeSeries base recebe candles antigos, o TimeSeries derivado é reconstruído.
+ *
+ * @author Alex Rodin <contato@alexrodin.info>
+ */
+final class RateResampler implements Cancelable {
+
+    private final TimeSeriesRateImpl source;
+
+    private final TimeSeriesRateImpl target;
+
+    private final String symbol;
+
+    private final TimeFrame timeframe;
+
+    private final double point;
+
+    /**
+     * Agrupamento de todos os candles do TimeSeries base, exceto o mais recente
+     */
+    private RateAggregator committed;
+
+    /**
+     * O candle mais recente do TimeSeries base
+     */
+    private Rate pending;
+
+    private final Cancelable listener;
+
+    RateResampler(TimeSeriesRateImpl source, TimeSeriesRateImpl target, String symbol, TimeFrame timeframe,
+            double point) {
+        this.source = source;
+        this.target = target;
+        this.symbol = symbol;
+        this.timeframe = timeframe;
+        this.point = point;
+
+        // Se já houver registros, o TimeSeries derivado é construído imediatamente
+        this.listener = source.onUpdate(this::onUpdate);
+    }
+
+    /**
+     * Deixa de acompanhar o TimeSeries base
+     */
+    @Override
+    public void cancel() {
+        listener.cancel();
+    }
+
+    private synchronized void onUpdate(TimeSeriesUpdate update) {
+        if (update.oldValuesAdded || committed == null) {
+            rebuild();
+            return;
+        }
+
+        if (update.lastUpdated) {
+            pending = source.last();
+            publish(new ArrayList<>());
+            return;
+        }
+
+        if (update.count == 0) {
+            // Apenas descarte de registros antigos, os candles derivados são mantidos
+            return;
+        }
+
+        // Os novos candles, do mais recente para o mais antigo
+        final List<Rate> added = source.list(update.newest, update.oldest);
+        final List<Rate> closed = new ArrayList<>();
+        for (int i = added.size() - 1; i >= 0; i--) {
+            commit(closed);
+            pending = added.get(i);
+        }
+        publish(closed);
+    }
+
+    /**
+     * Incorpora o candle mais recente do TimeSeries base ao agrupamento
+     *
+     * @param closed
+     */
+    private void commit(List<Rate> closed) {
+        if (pending != null) {
+            final Rate rate = committed.process(pending);
+            if (rate != null) {
+                closed.add(rate);
+            }
+        }
+    }
+
+    /**
+     * Atualiza o final do TimeSeries derivado com os candles encerrados e o candle em formação
+     *
+     * @param closed
+     */
+    private void publish(List<Rate> closed) {
+        final RateAggregator forming = committed.copy();
+        if (pending != null) {
+            final Rate rate = forming.process(pending);
+            if (rate != null) {
+                closed.add(rate);
+            }
+        }
+
+        for (Rate rate : closed) {
+            target.update(rate);
+        }
+
+        final Rate current = forming.current();
+        if (current != null) {
+            target.update(current);
+        }
+    }
+
+    private void rebuild() {
+        committed = new RateAggregator(symbol, timeframe, point);
+        pending = null;
+
+        final List<Rate> rates = new ArrayList<>();
+        final List<Rate> bars = source.list();
+        for (int i = bars.size() - 1; i >= 0; i--) {
+            commit(rates);
+            pending = bars.get(i);
+        }
+
+        final RateAggregator forming = committed.copy();
+        if (pending != null) {
+            final Rate rate = forming.process(pending);
+            if (rate != null) {
+                rates.add(rate);
+            }
+        }
+        final Rate current = forming.current();
+        if (current != null) {
+            rates.add(current);
+        }
+
+        target.reset(rates);
+    }
+}
@@ -0,0 +1,102 @@
+package com.github.nidorx.jtrade.core.impl;
+
+import com.github.nidorx.jtrade.core.AppliedPrice;
+import com.github.nidorx.jtrade.core.Rate;
+import com.github.nidorx.jtrade.core.RateVisitor;
+import java.util.List;
+
+/**
+ * Armazenamento dos registros de um {@link TimeSeriesRateImpl} que não mantém as instâncias de {@link Rate}.
+ *
+ * As posições são cronológicas (posição 0 = registro mais antigo mantido), os indices seguem a ordenação do TimeSeries
+ * (indice 0 = registro mais recente).
+ *
+ * @author Alex Rodin <contato@alexrodin.info>
+ */
+interface RateStorage {
+
+    /**
+     * Obtém uma visão do estado atual para os leitores.
+     *
+     * No modo concorrente a visão permanece válida após novas alterações, do contrário a própria instância é
+     * retornada
+     *
+     * @return
+     */
+    RateStorage view();
+
+    /**
+     * Obtém uma cópia imutável do estado atual, que não é afetada por alterações posteriores.
+     *
+     * No modo concorrente equivale a {@link #view()}, do contrário os registros são copiados
+     *
+     * @return
+     */
+    RateStorage snapshot();
+
+    /**
+     * Insere um registro na posição cronológica informada, deslocando os registros mais recentes
+     *
+     * @param position
+     * @param rate
+     */
+    void insert(int position, Rate rate);
+
+    /**
+     * Substitui os valores do registro na posição cronológica informada
+     *
+     * @param position
+     * @param rate
+     */
+    void replace(int position, Rate rate);
+
+    /**
+     * Intercala um lote de registros com os registros existentes
+     *
+     * @param rates Os registros, em ordem cronológica
+     * @param positions As posições cronológicas finais de cada registro
+     */
+    void merge(List<Rate> rates, int[] positions);
+
+    /**
+     * Descarta os registros mais antigos
+     *
+     * @param count
+     */
+    void evict(int count);
+
+    /**
+     * Materializa o Rate da posição cronológica informada
+     *
+     * @param position
+     * @return
+     */
+    Rate rate(int position);
+
+    /**
+     * Percorre os registros a partir do indice informado, do mais recente para o mais antigo
+     *
+     * @param index
+     * @param count
+     * @param visitor
+     * @return A quantidade de registros visitados
+     */
+    int forEach(int index, int count, RateVisitor visitor);
+
+    /**
+     * Copia os valores de um preço (open, high, low ou close) a partir do indice informado
+     *
+     * @param price
+     * @param index
+     * @param count
+     * @return
+     */
+    double[] copy(AppliedPrice price, int index, int count);
+
+    /**
+     * Estimativa do consumo de memória por registro
+     *
+     * @return
+     */
+    int bytesPerItem();
+}
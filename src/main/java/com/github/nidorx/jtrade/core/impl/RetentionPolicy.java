@@ -0,0 +1,86 @@
+package com.github.nidorx.jtrade.core.impl;
+
+import java.time.Duration;
+
+/**
+ * Política de retenção de registros de um TimeSeries.
+ *
+ * Permite limitar a quantidade de registros mantidos em memória em sessões de longa duração. Quando os limites são
+ * excedidos, os registros mais antigos são descartados.
+ *
+ * Os limites podem ser combinados, prevalece o mais restritivo.
+ *
+ * @author Alex Rodin <contato@alexrodin.info>
+ */
+public final class RetentionPolicy {
+
+    /**
+     * Mantém todos os registros
+     */
+    public static final RetentionPolicy UNLIMITED = new RetentionPolicy(0, null, 0);
+
+    /**
+     * Quantidade máxima de registros, 0 = sem limite
+     */
+    public final int maxCount;
+
+    /**
+     * Idade máxima dos registros, em relação ao registro mais recente (e não ao relógio do sistema, permitindo o uso em
+     * backtests). Nulo = sem limite
+     */
+    public final Duration maxAge;
+
+    /**
+     * Orçamento aproximado de memória em bytes para o TimeSeries, 0 = sem limite
+     */
+    public final long maxBytes;
+
+    public RetentionPolicy(int maxCount, Duration maxAge, long maxBytes) {
+        if (maxCount < 0 || maxBytes < 0 || (maxAge != null && maxAge.isNegative())) {
+            throw new IllegalArgumentException("Retention limits must not be negative");
+        }
+        this.maxCount = maxCount;
+        this.maxAge = maxAge;
+        this.maxBytes = maxBytes;
+    }
+
+    public static RetentionPolicy ofCount(int maxCount) {
+        return new RetentionPolicy(maxCount, null, 0);
+    }
+
+    public static RetentionPolicy ofAge(Duration maxAge) {
+        return new RetentionPolicy(0, maxAge, 0);
+    }
+
+    public static RetentionPolicy ofBytes(long maxBytes) {
+        return new RetentionPolicy(0, null, maxBytes);
+    }
+
+    /**
+     * Verifica se esta política não impõe limites
+     *
+     * @return
+     */
+    public boolean isUnlimited() {
+        return maxCount == 0 && maxAge == null && maxBytes == 0;
+    }
+
+    /**
+     * Obtém a quantidade máxima de registros permitida para o tamanho estimado de cada registro
+     *
+     * @param bytesPerItem
+     * @return A quantidade máxima, ou Integer.MAX_VALUE quando não há limite
+     */
+    int maxCount(int bytesPerItem) {
+        long max = maxCount > 0 ? maxCount : Integer.MAX_VALUE;
+        if (maxBytes > 0) {
+            max = Math.min(max, Math.max(1, maxBytes / Math.max(1, bytesPerItem)));
+        }
+        return (int) max;
+    }
+
+    @Override
+    public String toString() {
+        return " maxCount=" + maxCount + " maxAge=" + maxAge + " maxBytes=" + maxBytes;
+    }
+}
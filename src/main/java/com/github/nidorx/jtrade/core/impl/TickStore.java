@@ -0,0 +1,309 @@
+package com.github.nidorx.jtrade.core.impl;
+
+import com.github.nidorx.jtrade.core.Tick;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Armazenamento colunar dos ticks de um instrumento.
+ *
+ * Os ticks são incluídos somente no final (append-only), em arrays primitivos divididos em blocos de tamanho fixo,
+ * sem alocação de objetos por tick. Cada tick recebe um número de sequência (a ordem de chegada), permitindo manter
+ * vários ticks no mesmo milissegundo.
+ *
+ * <p>
+ * Um único escritor (o Broker) e vários leitores sem bloqueio: o escritor publica a sequência do próximo tick através
+ * de um campo volátil, após a escrita dos valores. As consultas por intervalo de tempo usam busca binária, em O(log
+ * n).
+ *
+ * @author Alex Rodin <contato@alexrodin.info>
+ */
+final class TickStore {
+
+    private static final int CHUNK_BITS = 12;
+
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private static final int INITIAL_CHUNKS = 16;
+
+    /**
+     * Estimativa do consumo de memória por tick
+     */
+    private static final int BYTES = Long.BYTES + 4 * Double.BYTES;
+
+    private final String symbol;
+
+    /**
+     * Os blocos de arrays, substituído apenas quando o diretório de blocos é reconstruído
+     */
+    private volatile Chunks chunks;
+
+    /**
+     * Sequência do tick mais antigo mantido
+     */
+    private volatile long head = 0;
+
+    /**
+     * Sequência do próximo tick, publicada após a escrita dos valores
+     */
+    private volatile long tail = 0;
+
+    private RetentionPolicy retention = RetentionPolicy.UNLIMITED;
+
+    TickStore(String symbol) {
+        this.symbol = symbol;
+        this.chunks = new Chunks(0, INITIAL_CHUNKS);
+    }
+
+    /**
+     * Inclui o tick no final do armazenamento.
+     *
+     * @param tick
+     * @return Falso se o tick for mais antigo do que o último tick recebido
+     */
+    boolean add(Tick tick) {
+        return add(TimeSeriesAbstract.key(tick.time), tick.bid, tick.ask, tick.last, tick.volume);
+    }
+
+    /**
+     * Inclui o tick no final do armazenamento, sem alocação de objetos (exceto a cada novo bloco)
+     *
+     * @param time Epoch millis
+     * @param bid
+     * @param ask
+     * @param last
+     * @param volume
+     * @return Falso se o tick for mais antigo do que o último tick recebido
+     */
+    synchronized boolean add(long time, double bid, double ask, double last, double volume) {
+        final long seq = tail;
+        Chunks c = chunks;
+        if (seq > head && time < c.time(seq - 1)) {
+            return false;
+        }
+
+        final int chunk = (int) ((seq - c.base) >> CHUNK_BITS);
+        if (chunk >= c.time.length) {
+            c = chunks = c.rebuild(head, seq);
+        }
+        final int index = (int) ((seq - c.base) >> CHUNK_BITS);
+        if (c.time[index] == null) {
+            c.allocate(index);
+        }
+
+        final int i = (int) (seq & CHUNK_MASK);
+        c.time[index][i] = time;
+        c.bid[index][i] = bid;
+        c.ask[index][i] = ask;
+        c.last[index][i] = last;
+        c.volume[index][i] = volume;
+
+        // Publica o tick para os leitores
+        tail = seq + 1;
+
+        applyRetention(time);
+        return true;
+    }
+
+    /**
+     * Define a política de retenção dos ticks, os ticks excedentes são descartados imediatamente
+     *
+     * @param retention
+     */
+    synchronized void setRetention(RetentionPolicy retention) {
+        this.retention = retention == null ? RetentionPolicy.UNLIMITED : retention;
+        if (tail > head) {
+            applyRetention(chunks.time(tail - 1));
+        }
+    }
+
+    int size() {
+        final long t = tail;
+        return (int) Math.max(0, t - head);
+    }
+
+    /**
+     * Obtém todos os ticks, do mais recente para o mais antigo
+     *
+     * @return
+     */
+    List<Tick> list() {
+        return list(null, null);
+    }
+
+    /**
+     * Obtém os ticks até o instante informado (inclusivo), do mais recente para o mais antigo
+     *
+     * @param stop
+     * @return
+     */
+    List<Tick> list(Instant stop) {
+        return list(null, stop);
+    }
+
+    /**
+     * Obtém os ticks entre os instantes informados (inclusivos), do mais recente para o mais antigo
+     *
+     * @param start O instante mais recente, nulo para o tick mais recente
+     * @param stop O instante mais antigo, nulo para o tick mais antigo
+     * @return
+     */
+    List<Tick> list(Instant start, Instant stop) {
+        // A ordem das leituras garante que os blocos contém todos os ticks publicados
+        final long t = tail;
+        final long h = head;
+        final Chunks c = chunks;
+        final long from = Math.max(h, c.base);
+
+        final long first = stop == null ? from : c.lowerBound(from, t, TimeSeriesAbstract.key(stop));
+        final long end = start == null ? t : c.upperBound(from, t, TimeSeriesAbstract.key(start));
+
+        final List<Tick> out = new ArrayList<>((int) Math.max(0, end - first));
+        for (long seq = end - 1; seq >= first; seq--) {
+            out.add(c.tick(symbol, seq));
+        }
+        return out;
+    }
+
+    /**
+     * Descarta os ticks mais antigos que excedem a política de retenção
+     *
+     * @param newest O instante do tick mais recente
+     */
+    private void applyRetention(long newest) {
+        if (retention.isUnlimited()) {
+            return;
+        }
+
+        long h = Math.max(head, tail - retention.maxCount(BYTES));
+        if (retention.maxAge != null) {
+            final long limit = newest - retention.maxAge.toMillis();
+            final Chunks c = chunks;
+            if (h < tail && c.time(h) < limit) {
+                h = c.lowerBound(h, tail, limit);
+            }
+        }
+        // Os blocos descartados são liberados na próxima reconstrução do diretório
+        head = h;
+    }
+
+    /**
+     * Diretório dos blocos de arrays.
+     *
+     * O diretório é reconstruído quando não houver espaço para um novo bloco, descartando os blocos anteriores ao tick
+     * mais antigo mantido. Os leitores continuam usando o diretório obtido no início da consulta
+     */
+    private static final class Chunks {
+
+        /**
+         * Sequência do primeiro tick do bloco 0, sempre múltiplo do tamanho do bloco
+         */
+        final long base;
+
+        final long[][] time;
+
+        final double[][] bid;
+
+        final double[][] ask;
+
+        final double[][] last;
+
+        final double[][] volume;
+
+        Chunks(long base, int length) {
+            this.base = base;
+            this.time = new long[length][];
+            this.bid = new double[length][];
+            this.ask = new double[length][];
+            this.last = new double[length][];
+            this.volume = new double[length][];
+        }
+
+        /**
+         * Cria um novo diretório a partir do bloco do tick mais antigo mantido
+         *
+         * @param head
+         * @param tail
+         * @return
+         */
+        Chunks rebuild(long head, long tail) {
+            final long newBase = Math.max(base, head & ~CHUNK_MASK);
+            final int skip = (int) ((newBase - base) >> CHUNK_BITS);
+            final int used = (int) ((tail - newBase + CHUNK_MASK) >> CHUNK_BITS);
+            final Chunks out = new Chunks(newBase, Math.max(INITIAL_CHUNKS, (used + 1) * 2));
+            System.arraycopy(time, skip, out.time, 0, used);
+            System.arraycopy(bid, skip, out.bid, 0, used);
+            System.arraycopy(ask, skip, out.ask, 0, used);
+            System.arraycopy(last, skip, out.last, 0, used);
+            System.arraycopy(volume, skip, out.volume, 0, used);
+            return out;
+        }
+
+        void allocate(int index) {
+            bid[index] = new double[CHUNK_SIZE];
+            ask[index] = new double[CHUNK_SIZE];
+            last[index] = new double[CHUNK_SIZE];
+            volume[index] = new double[CHUNK_SIZE];
+            // Publicado por último, indica que o bloco foi alocado
+            time[index] = new long[CHUNK_SIZE];
+        }
+
+        long time(long seq) {
+            return time[(int) ((seq - base) >> CHUNK_BITS)][(int) (seq & CHUNK_MASK)];
+        }
+
+        Tick tick(String symbol, long seq) {
+            final int index = (int) ((seq - base) >> CHUNK_BITS);
+            final int i = (int) (seq & CHUNK_MASK);
+            return new Tick(symbol, Instant.ofEpochMilli(time[index][i]), bid[index][i], ask[index][i], last[index][i],
+                    volume[index][i]);
+        }
+
+        /**
+         * Busca binária pelo primeiro tick com instante maior ou igual ao informado
+         *
+         * @param from
+         * @param to
+         * @param key
+         * @return A sequência do tick, ou <code>to</code> se não existir
+         */
+        long lowerBound(long from, long to, long key) {
+            long low = from;
+            long high = to;
+            while (low < high) {
+                final long mid = (low + high) >>> 1;
+                if (time(mid) < key) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * Busca binária pelo primeiro tick com instante maior do que o informado
+         *
+         * @param from
+         * @param to
+         * @param key
+         * @return A sequência do tick, ou <code>to</code> se não existir
+         */
+        long upperBound(long from, long to, long key) {
+            long low = from;
+            long high = to;
+            while (low < high) {
+                final long mid = (low + high) >>> 1;
+                if (time(mid) <= key) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+}
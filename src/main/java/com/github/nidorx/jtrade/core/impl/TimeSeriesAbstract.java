@@ -1,52 +1,156 @@
 package com.github.nidorx.jtrade.core.impl;
 
 import com.github.nidorx.jtrade.core.TimeSeries;
+import com.github.nidorx.jtrade.core.TimeSeriesUpdate;
 import com.github.nidorx.jtrade.util.function.Cancelable;
 import java.time.Instant;
+import java.util.AbstractMap;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.SortedMap;
 import java.util.Spliterator;
-import java.util.Spliterators;
-import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.function.Consumer;
-import java.util.function.Predicate;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
 /**
  * Implementação genérica para gerenciamento de séries temporais
  *
+ * Os registros são mantidos em ordem cronológica (posição 0 = mais antigo), o indice do TimeSeries (0 = mais recente) é
+ * obtido diretamente da posição, sem necessidade de reindexação a cada inserção.
+ *
+ * <p>
+ * Os arrays possuem um deslocamento inicial (head), permitindo descartar os registros mais antigos em O(1) conforme a
+ * {@link RetentionPolicy política de retenção}.
+ *
+ * <p>
+ * Um único escritor publica cada alteração em um {@link State estado imutável} através de uma referência volátil com
+ * número de versão. As leituras obtém o estado uma única vez e trabalham sobre ele, sem bloqueios. No modo concorrente,
+ * as alterações que modificariam posições visíveis aos leitores (inserções fora de ordem, compactação) são feitas em
+ * cópias dos arrays.
+ *
  * @author Alex Rodin <contato@alexrodin.info>
  * @param <T>
  */
 public abstract class TimeSeriesAbstract<T> implements TimeSeries<T> {
 
-    private final SortedMap<Instant, T> data = Collections.synchronizedSortedMap(new TreeMap<>((a, b) -> {
-        // Indice 0 deve ser o valor mais recente
-        return b.compareTo(a);
-    }));
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * Os instantes dos registros (epoch millis), em ordem cronológica. Uso exclusivo do escritor
+     */
+    private long[] times;
+
+    /**
+     * Os registros, na mesma posição de seus instantes. Nulo quando a implementação armazena os itens
+     */
+    private Object[] items;
+
+    /**
+     * Posição física do registro mais antigo nos arrays
+     */
+    private int head = 0;
+
+    /**
+     * Quantidade de registros existentes
+     */
+    private int size = 0;
+
+    /**
+     * Incrementado quando as posições dos registros existentes mudam (registros antigos adicionados ou todos os registros
+     * substituídos)
+     */
+    private int generation = 0;
 
     /**
-     * Time -> Indice
+     * O último estado publicado pelo escritor, usado pelas leituras
      */
-    private final Map<Long, Integer> indexed = new HashMap<>();
+    private volatile State state;
 
     /**
-     * Indice -> Time
+     * Limites de registros mantidos por este TimeSeries
      */
-    private final Map<Integer, Long> indexedReverse = new HashMap<>();
+    private RetentionPolicy retention;
 
     /**
      * Lista de callbacks que serão invocados quando novos valores forem adicionados
      */
-    private final List<Consumer<Boolean>> callbacks = new ArrayList<>();
+    private final List<Consumer<TimeSeriesUpdate>> callbacks = new CopyOnWriteArrayList<>();
+
+    /**
+     * Quando falso, a implementação é responsável por armazenar os itens (ex. em colunas primitivas) e este TimeSeries
+     * atua apenas como índice temporal.
+     *
+     * @see #store(int, java.lang.Object)
+     * @see #merge(java.util.List, int[])
+     * @see #load(java.lang.Object, int)
+     */
+    private final boolean retainItems;
+
+    /**
+     * Quando verdadeiro, as posições visíveis aos leitores nunca são modificadas (copy-on-write), permitindo leituras
+     * sem bloqueio em outras threads enquanto o escritor adiciona registros
+     */
+    private final boolean concurrent;
+
+    /**
+     * Indica que esta instância é uma visão imutável de outro TimeSeries
+     *
+     * @see #snapshot()
+     */
+    private final boolean readOnly;
+
+    public TimeSeriesAbstract() {
+        this(true, RetentionPolicy.UNLIMITED, false);
+    }
+
+    public TimeSeriesAbstract(RetentionPolicy retention) {
+        this(true, retention, false);
+    }
+
+    public TimeSeriesAbstract(RetentionPolicy retention, boolean concurrent) {
+        this(true, retention, concurrent);
+    }
+
+    protected TimeSeriesAbstract(boolean retainItems, RetentionPolicy retention, boolean concurrent) {
+        this.retainItems = retainItems;
+        this.concurrent = concurrent;
+        this.readOnly = false;
+        this.retention = retention == null ? RetentionPolicy.UNLIMITED : retention;
+        this.times = new long[INITIAL_CAPACITY];
+        this.items = retainItems ? new Object[INITIAL_CAPACITY] : null;
+        this.state = new State(times, items, 0, 0, 0, 0, null, null);
+    }
+
+    /**
+     * Cria uma visão imutável do último estado publicado pelo TimeSeries informado.
+     *
+     * No modo concorrente a visão compartilha os arrays publicados, que nunca são modificados. Do contrário, o escritor
+     * modifica os arrays (compactação, inserções e descartes), então os registros publicados são copiados
+     *
+     * @param source
+     */
+    protected TimeSeriesAbstract(TimeSeriesAbstract<T> source) {
+        this.retainItems = source.retainItems;
+        this.concurrent = source.concurrent;
+        this.readOnly = true;
+        this.retention = source.retention;
+        final State s = source.state;
+        if (source.concurrent) {
+            this.state = s;
+        } else {
+            this.state = new State(
+                    Arrays.copyOfRange(s.times, s.head, s.head + s.size),
+                    s.items == null ? null : Arrays.copyOfRange(s.items, s.head, s.head + s.size),
+                    0, s.size, s.version, s.generation, source.snapshotStorage(), s.newest
+            );
+        }
+    }
 
     /**
      * Permite extrair o instant do item
@@ -57,53 +161,371 @@ public abstract class TimeSeriesAbstract<T> implements TimeSeries<T> {
     protected abstract Instant extract(T item);
 
     /**
-     * Adiciona varios valores na lista ordenada
+     * Permite que a implementação armazene o item em estrutura própria, quando este TimeSeries não mantém os itens.
+     *
+     * Invocado após a indexação do item
      *
-     * @param items
+     * @param position A posição cronológica do item (0 = mais antigo), os itens a partir desta posição devem ser
+     * deslocados
+     * @param item
      */
-    public void add(List<T> items) {
-        items.forEach(item -> add(item));
+    protected void store(int position, T item) {
+
     }
 
     /**
-     * Adiciona um valor na lista ordenada
+     * Permite que a implementação substitua o item armazenado em estrutura própria, quando este TimeSeries não mantém
+     * os itens.
+     *
+     * @param position A posição cronológica do item (0 = mais antigo)
+     * @param item
+     * @see #update(java.lang.Object)
+     */
+    protected void replace(int position, T item) {
+
+    }
+
+    /**
+     * Permite que a implementação armazene um lote de itens em estrutura própria, quando este TimeSeries não mantém os
+     * itens.
+     *
+     * Os itens existentes mantém sua ordem relativa e ocupam as posições não informadas, permitindo a intercalação dos
+     * registros em uma única passagem (do mais recente para o mais antigo)
+     *
+     * @param items Os itens inseridos, em ordem cronológica
+     * @param positions As posições cronológicas finais de cada item (0 = mais antigo)
+     */
+    protected void merge(List<T> items, int[] positions) {
+
+    }
+
+    /**
+     * Permite que a implementação descarte os itens mais antigos armazenados em estrutura própria, quando este
+     * TimeSeries não mantém os itens.
+     *
+     * @param count A quantidade de itens a partir da posição cronológica 0
+     */
+    protected void evict(int count) {
+
+    }
+
+    /**
+     * Permite que a implementação publique uma visão imutável da sua estrutura de armazenamento, entregue junto com
+     * cada estado do TimeSeries.
+     *
+     * Invocado pelo escritor após cada alteração
+     *
+     * @return
+     */
+    protected Object storage() {
+        return null;
+    }
+
+    /**
+     * Permite à implementação fornecer uma cópia dos registros armazenados, que não é afetada por alterações
+     * posteriores. Usado pelo {@link #snapshot()} quando o TimeSeries não está no modo concorrente
+     *
+     * @return
+     * @see #storage()
+     */
+    protected Object snapshotStorage() {
+        return storage();
+    }
+
+    /**
+     * Permite que a implementação entregue o item armazenado em estrutura própria, quando este TimeSeries não mantém
+     * os itens.
+     *
+     * @param storage A visão do armazenamento publicada junto com o estado sendo lido
+     * @param position A posição cronológica do item (0 = mais antigo)
+     * @return
+     * @see #storage()
+     */
+    protected T load(Object storage, int position) {
+        return null;
+    }
+
+    /**
+     * Estimativa do consumo de memória por registro, usado pela política de retenção com orçamento de memória
+     *
+     * @return
+     */
+    protected int bytesPerItem() {
+        // Chave + referência + estimativa do objeto
+        return Long.BYTES + Integer.BYTES + 64;
+    }
+
+    /**
+     * Verifica se as alterações são feitas em modo copy-on-write
+     *
+     * @return
+     */
+    protected final boolean isConcurrent() {
+        return concurrent;
+    }
+
+    /**
+     * Obtém o último estado publicado. As leituras devem obter o estado uma única vez
+     *
+     * @return
+     */
+    protected final State state() {
+        return state;
+    }
+
+    /**
+     * Define a política de retenção deste TimeSeries, os registros excedentes são descartados imediatamente
+     *
+     * @param retention
+     */
+    public void setRetention(RetentionPolicy retention) {
+        checkWritable();
+
+        final TimeSeriesUpdate update;
+        synchronized (this) {
+            this.retention = retention == null ? RetentionPolicy.UNLIMITED : retention;
+            final int evicted = applyRetention();
+            if (evicted == 0) {
+                return;
+            }
+            publish();
+            final Instant oldest = state.instant(0);
+            update = new TimeSeriesUpdate(false, oldest, oldest, 0, evicted);
+        }
+        notify(update);
+    }
+
+    public RetentionPolicy getRetention() {
+        return retention;
+    }
+
+    /**
+     * Adiciona varios valores na lista ordenada.
+     *
+     * O lote é ordenado uma única vez e intercalado com os registros existentes em uma única passagem, os callbacks de
+     * alteração são informados apenas uma vez, com o intervalo de tempo afetado.
+     *
+     * @param batch
+     */
+    public void add(List<T> batch) {
+        add(batch, false);
+    }
+
+    /**
+     * Substitui todos os registros deste TimeSeries pelos itens informados.
+     *
+     * Os leitores passam a enxergar os novos registros de uma única vez, os callbacks são informados apenas uma vez
+     * (como inclusão de valores antigos, forçando o re-calculo dos indicadores)
+     *
+     * @param batch
+     */
+    public void reset(List<T> batch) {
+        add(batch, true);
+    }
+
+    private void add(List<T> batch, boolean reset) {
+        checkWritable();
+        if (!reset && (batch == null || batch.isEmpty())) {
+            return;
+        }
+
+        final List<T> sorted = new ArrayList<>(batch == null ? 0 : batch.size());
+        if (batch != null) {
+            for (T item : batch) {
+                if (item != null && extract(item) != null) {
+                    sorted.add(item);
+                }
+            }
+        }
+        sorted.sort(Comparator.comparing(this::extract));
+
+        final TimeSeriesUpdate update;
+        synchronized (this) {
+            final int removed = reset ? clear() : 0;
+            final State current = state;
+
+            // Descarta os registros repetidos no lote ou já existentes
+            final List<T> added = new ArrayList<>(sorted.size());
+            final long[] keys = new long[sorted.size()];
+            int count = 0;
+            for (T item : sorted) {
+                final long key = key(extract(item));
+                if (count > 0 && keys[count - 1] == key) {
+                    continue;
+                }
+                if (size > 0 && key <= times[head + size - 1] && current.search(key) >= 0) {
+                    continue;
+                }
+                keys[count++] = key;
+                added.add(item);
+            }
+
+            if (count == 0) {
+                if (removed > 0) {
+                    generation++;
+                    publish();
+                    update = new TimeSeriesUpdate(true, null, null, 0, removed);
+                } else {
+                    // Evita processamento desnecessário
+                    return;
+                }
+            } else {
+                update = insertAll(added, keys, count, reset, reset || (size > 0 && keys[0] < times[head + size - 1]),
+                        removed);
+            }
+        }
+
+        notify(update);
+    }
+
+    /**
+     * Intercala os itens ordenados e sem repetição com os registros existentes e publica o novo estado
+     *
+     * @param added
+     * @param keys
+     * @param count
+     * @param reset Todos os registros foram substituídos
+     * @param oldValuesAdded
+     * @param removed
+     * @return
+     */
+    private TimeSeriesUpdate insertAll(List<T> added, long[] keys, int count, boolean reset, boolean oldValuesAdded,
+            int removed) {
+        if (oldValuesAdded && concurrent) {
+            // Os registros existentes serão movidos, não altera os arrays visíveis aos leitores
+            detach(size + count);
+        } else {
+            ensureCapacity(size + count);
+        }
+
+        // Intercala do mais recente para o mais antigo, cada registro existente é movido no máximo uma vez
+        final int[] positions = new int[count];
+        for (int i = head + size - 1, j = count - 1, k = head + size + count - 1; j >= 0; k--) {
+            if (i >= head && times[i] > keys[j]) {
+                times[k] = times[i];
+                if (retainItems) {
+                    items[k] = items[i];
+                }
+                i--;
+            } else {
+                times[k] = keys[j];
+                if (retainItems) {
+                    items[k] = added.get(j);
+                }
+                positions[j--] = k - head;
+            }
+        }
+        size += count;
+
+        if (!retainItems) {
+            merge(added, positions);
+        }
+
+        final int evicted = applyRetention() + removed;
+        if (oldValuesAdded) {
+            generation++;
+        }
+        publish();
+
+        final Instant oldest = extract(added.get(0));
+        return new TimeSeriesUpdate(oldValuesAdded, oldest, extract(added.get(count - 1)), count, evicted, false,
+                reset ? null : oldest);
+    }
+
+    /**
+     * Adiciona um valor na lista ordenada.
+     *
+     * Inserções no final (registro mais recente) custam O(1) amortizado, registros mais antigos deslocam apenas os
+     * registros mais recentes do que ele.
      *
      * @param item
      */
     public void add(T item) {
+        checkWritable();
+
         final Instant itemInstant = extract(item);
+        if (itemInstant == null) {
+            return;
+        }
+
+        final TimeSeriesUpdate update;
+        synchronized (this) {
+            final long key = key(itemInstant);
 
-        if (itemInstant == null || data.containsKey(itemInstant)) {
-            // Evita processamento desnecessário
+            int position = size;
+            if (size > 0 && key <= times[head + size - 1]) {
+                position = state.search(key);
+                if (position >= 0) {
+                    // Evita processamento desnecessário
+                    return;
+                }
+                position = -(position + 1);
+            }
+
+            // Quando for inserido um registro mais antigo do que o ultimo registro salvo,
+            // pode significar que o window frame foi modificado ou registros mais antigos foram adicionados
+            // força a atualização dos indicadores
+            final boolean oldValuesAdded = position < size;
+
+            insert(position, key, item);
+
+            final int evicted = applyRetention();
+            if (oldValuesAdded) {
+                generation++;
+            }
+            publish();
+
+            update = new TimeSeriesUpdate(oldValuesAdded, itemInstant, itemInstant, 1, evicted, false, itemInstant);
+        }
+
+        notify(update);
+    }
+
+    /**
+     * Adiciona ou substitui o registro mais recente (ex. o candle em formação).
+     *
+     * Um item no mesmo instante do registro mais recente o substitui em O(1), os callbacks são informados com
+     * {@link TimeSeriesUpdate#lastUpdated}. Nos demais instantes o comportamento é o mesmo de {@link #add(java.lang.Object)}
+     *
+     * @param item
+     */
+    public void update(T item) {
+        checkWritable();
+
+        final Instant itemInstant = extract(item);
+        if (itemInstant == null) {
             return;
         }
 
-        // Quando for inserido um registro mais antigo do que o ultimo registro salvo, 
-        // pode significar que o window frame foi modificado ou registros mais antigos foram adicionados
-        // força a atualização dos indicadores
-        boolean oldValuesAdded = itemInstant.isBefore(data.firstKey());
-        this.data.put(itemInstant, item);
+        final TimeSeriesUpdate update;
+        synchronized (this) {
+            if (size == 0 || key(itemInstant) != times[head + size - 1]) {
+                add(item);
+                return;
+            }
+
+            if (retainItems) {
+                // No modo concorrente, os estados publicados mantém a referência do item substituído
+                items[head + size - 1] = item;
+            } else {
+                replace(size - 1, item);
+            }
+            publish();
 
-        // Refaz os indices
-        int i = 0;
-        for (Instant instant : this.data.keySet()) {
-            indexed.put(instant.getEpochSecond(), i);
-            indexedReverse.put(i++, instant.getEpochSecond());
+            update = new TimeSeriesUpdate(false, itemInstant, itemInstant, 0, 0, true);
         }
 
-        // Informa sobre alteração nos registros
-        callbacks.forEach(callback -> {
-            callback.accept(oldValuesAdded);
-        });
+        notify(update);
     }
 
     @Override
-    public Cancelable onUpdate(Consumer<Boolean> callback) {
+    public Cancelable onUpdate(Consumer<TimeSeriesUpdate> callback) {
         callbacks.add(callback);
 
         // Já executa o callback, se houver registros
-        if (!this.data.isEmpty()) {
-            callback.accept(true);
+        final State s = state;
+        if (s.size > 0) {
+            callback.accept(new TimeSeriesUpdate(true, s.instant(0), s.instant(s.size - 1), s.size, 0));
         }
 
         return () -> {
@@ -111,39 +533,68 @@ public abstract class TimeSeriesAbstract<T> implements TimeSeries<T> {
         };
     }
 
+    @Override
+    public long version() {
+        return state.version;
+    }
+
+    @Override
+    public TimeSeries<T> snapshot() {
+        final TimeSeriesAbstract<T> source = this;
+        return new TimeSeriesAbstract<T>(this) {
+            @Override
+            protected Instant extract(T item) {
+                return source.extract(item);
+            }
+
+            @Override
+            protected T load(Object storage, int position) {
+                return source.load(storage, position);
+            }
+        };
+    }
+
     @Override
     public int size() {
-        return data.size();
+        return state.size;
     }
 
     @Override
     public T first() {
-        return data.get(data.lastKey());
+        final State s = state;
+        return s.size == 0 ? null : item(s, 0);
     }
 
     @Override
     public T last() {
-        return data.get(data.firstKey());
+        final State s = state;
+        return s.size == 0 ? null : item(s, s.size - 1);
     }
 
     @Override
     public T one(Instant instant) {
-        final Instant closestStart = getClosestStart(instant);
-        if (!data.containsKey(closestStart)) {
+        final State s = state;
+        final int position = s.closestStart(instant);
+        if (position < 0) {
             return null;
         }
-        return data.get(closestStart);
+        return item(s, position);
     }
 
     @Override
     public Stream<Map.Entry<Instant, T>> stream() {
-        return data.entrySet().stream();
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    @Override
+    public Spliterator<Map.Entry<Instant, T>> spliterator() {
+        final State s = state;
+        return new Entries(s, 0, s.size);
     }
 
     public List<T> list() {
-        return data.entrySet().stream()
-                .map(e -> e.getValue())
-                .collect(Collectors.toList());
+        final State s = state;
+        return items(s, s.range(0, s.size - 1));
     }
 
     @Override
@@ -153,148 +604,573 @@ public abstract class TimeSeriesAbstract<T> implements TimeSeries<T> {
 
     @Override
     public List<T> list(Instant stop) {
-        return list(Instant.ofEpochSecond(indexedReverse.get(0)), stop);
+        final State s = state;
+        return items(s, s.range(0, s.stopIndex(stop)));
     }
 
     @Override
     public List<T> list(int start, int count) {
-        if (indexedReverse.size() <= start) {
-            return new ArrayList<>();
-        }
-        return list(Instant.ofEpochSecond(indexedReverse.get(start)), count);
+        final State s = state;
+        return items(s, s.positions(start, count));
     }
 
     @Override
     public List<T> list(Instant start, int count) {
-        final Instant closestStart = getClosestStart(start);
-
-        return data.tailMap(closestStart)
-                .entrySet().stream()
-                .limit(count)
-                .map(e -> e.getValue())
-                .collect(Collectors.toList());
+        final State s = state;
+        return items(s, s.positions(s.startIndex(start), count));
     }
 
     @Override
     public List<T> list(Instant start, Instant stop) {
-        final Instant closestStart = getClosestStart(start);
-        final Instant closestStop = getClosestStop(stop);
-
-        return takeWhile(closestStart, e -> !e.getKey().isBefore(closestStop))
-                .map(e -> e.getValue())
-                .collect(Collectors.toList());
+        final State s = state;
+        return items(s, s.range(s.startIndex(start), s.stopIndex(stop)));
     }
 
     @Override
-    public Set<Instant> time(int count) {
+    public List<Instant> time(int count) {
         return time(0, count);
     }
 
     @Override
-    public Set<Instant> time(Instant stop) {
-        return time(data.firstKey(), stop);
+    public List<Instant> time(Instant stop) {
+        final State s = state;
+        return instants(s, s.range(0, s.stopIndex(stop)));
     }
 
     @Override
-    public Set<Instant> time(int start, int count) {
-        if (indexedReverse.size() <= start) {
-            return new HashSet<>();
-        }
-        return time(Instant.ofEpochSecond(indexedReverse.get(start)), count);
+    public List<Instant> time(int start, int count) {
+        final State s = state;
+        return instants(s, s.positions(start, count));
+    }
+
+    @Override
+    public List<Instant> time(Instant start, int count) {
+        final State s = state;
+        return instants(s, s.positions(s.startIndex(start), count));
+    }
+
+    @Override
+    public List<Instant> time(Instant start, Instant stop) {
+        final State s = state;
+        return instants(s, s.range(s.startIndex(start), s.stopIndex(stop)));
+    }
+
+    @Override
+    public long[] timeMillis(int count) {
+        return timeMillis(0, count);
+    }
+
+    @Override
+    public long[] timeMillis(Instant stop) {
+        final State s = state;
+        return s.times(0, s.stopIndex(stop) + 1, 1);
+    }
+
+    @Override
+    public long[] timeMillis(int start, int count) {
+        return state.times(start, count, 1);
+    }
+
+    @Override
+    public long[] timeMillis(Instant start, int count) {
+        final State s = state;
+        return s.times(s.startIndex(start), count, 1);
+    }
+
+    @Override
+    public long[] timeMillis(Instant start, Instant stop) {
+        final State s = state;
+        final int startIndex = s.startIndex(start);
+        return s.times(startIndex, s.stopIndex(stop) - startIndex + 1, 1);
+    }
+
+    @Override
+    public long[] timeSeconds(int count) {
+        return timeSeconds(0, count);
+    }
+
+    @Override
+    public long[] timeSeconds(Instant stop) {
+        final State s = state;
+        return s.times(0, s.stopIndex(stop) + 1, 1000);
     }
 
     @Override
-    public Set<Instant> time(Instant start, int count) {
-        return data.tailMap(getClosestStart(start)).keySet().stream()
-                .limit(count)
-                .collect(Collectors.toSet());
+    public long[] timeSeconds(int start, int count) {
+        return state.times(start, count, 1000);
     }
 
     @Override
-    public Set<Instant> time(Instant start, Instant stop) {
-        final Instant closestStart = getClosestStart(start);
-        final Instant closestStop = getClosestStop(stop);
+    public long[] timeSeconds(Instant start, int count) {
+        final State s = state;
+        return s.times(s.startIndex(start), count, 1000);
+    }
 
-        return takeWhile(closestStart, e -> !e.getKey().isBefore(closestStop))
-                .map(e -> e.getKey())
-                .collect(Collectors.toSet());
+    @Override
+    public long[] timeSeconds(Instant start, Instant stop) {
+        final State s = state;
+        final int startIndex = s.startIndex(start);
+        return s.times(startIndex, s.stopIndex(stop) - startIndex + 1, 1000);
+    }
+
+    @Override
+    public int indexOf(Instant instant) {
+        if (instant == null) {
+            return -1;
+        }
+        final State s = state;
+        final int position = s.search(key(instant));
+        return position < 0 ? -1 : s.size - 1 - position;
+    }
+
+    @Override
+    public int barShift(Instant instant, boolean exact) {
+        return exact ? indexOf(instant) : state.startIndex(instant);
+    }
+
+    /**
+     * Converte o instante para a chave de indexação (epoch millis), saturando os instantes fora do intervalo
+     * representável
+     *
+     * @param instant
+     * @return
+     */
+    protected static long key(Instant instant) {
+        try {
+            return instant.toEpochMilli();
+        } catch (ArithmeticException ex) {
+            return instant.isBefore(Instant.EPOCH) ? Long.MIN_VALUE : Long.MAX_VALUE;
+        }
     }
 
     /**
-     * Permite iterar numa Stream de valores até que a condição seja satisfeita
+     * Obtém o item da posição cronológica informada no estado publicado
      *
-     * @param <T>
-     * @param stream
-     * @param predicate
+     * @param s
+     * @param position
      * @return
-     * @see https://stackoverflow.com/a/20765715
      */
-    private Stream<Map.Entry<Instant, T>> takeWhile(Instant start, Predicate<Map.Entry<Instant, T>> predicate) {
-        final Instant closestStart = getClosestStart(start);
-        final Stream<Map.Entry<Instant, T>> stream = data.tailMap(closestStart).entrySet().stream().sequential();
-        final Spliterator<Map.Entry<Instant, T>> splitr = stream.spliterator();
-        final Spliterator iterator = new Spliterators.AbstractSpliterator(splitr.estimateSize(), 0) {
+    @SuppressWarnings("unchecked")
+    protected final T item(State s, int position) {
+        if (retainItems) {
+            if (s.newest != null && position == s.size - 1) {
+                return (T) s.newest;
+            }
+            return (T) s.items[s.head + position];
+        }
+        return load(s.storage, position);
+    }
+
+    private List<T> items(State s, IntStream positions) {
+        return positions.mapToObj(position -> item(s, position)).collect(Collectors.toList());
+    }
 
-            boolean stillGoing = true;
+    private static List<Instant> instants(State s, IntStream positions) {
+        return positions.mapToObj(s::instant).collect(Collectors.toList());
+    }
 
-            @Override
-            public boolean tryAdvance(Consumer consumer) {
-                if (stillGoing) {
-                    boolean hadNext = splitr.tryAdvance(elem -> {
-                        if (predicate.test(elem)) {
-                            consumer.accept(elem);
-                        } else {
-                            stillGoing = false;
-                        }
-                    });
-                    return hadNext && stillGoing;
-                }
-                return false;
+    private void checkWritable() {
+        if (readOnly) {
+            throw new UnsupportedOperationException("TimeSeries snapshot is read-only");
+        }
+    }
+
+    /**
+     * Publica o estado atual para os leitores
+     */
+    private void publish() {
+        // O registro mais recente pode ser substituído, cada estado mantém sua referência
+        final Object newest = concurrent && retainItems && size > 0 ? items[head + size - 1] : null;
+        state = new State(times, items, head, size, state.version + 1, generation, storage(), newest);
+    }
+
+    /**
+     * Informa sobre alteração nos registros
+     *
+     * @param update
+     */
+    private void notify(TimeSeriesUpdate update) {
+        callbacks.forEach(callback -> {
+            callback.accept(update);
+        });
+    }
+
+    /**
+     * Garante espaço para a quantidade de registros após o head.
+     *
+     * Se o espaço livre no início dos arrays (registros descartados) for suficiente, os registros são compactados, do
+     * contrário os arrays crescem
+     *
+     * @param capacity
+     */
+    private void ensureCapacity(int capacity) {
+        if (head + capacity <= times.length) {
+            return;
+        }
+
+        if (!concurrent && capacity <= times.length - (times.length >> 2)) {
+            System.arraycopy(times, head, times, 0, size);
+            if (retainItems) {
+                System.arraycopy(items, head, items, 0, size);
+                Arrays.fill(items, size, head + size, null);
             }
-        };
-        return StreamSupport.stream(iterator, false);
+            head = 0;
+        } else {
+            detach(capacity);
+        }
     }
 
     /**
-     * Obtém o item seguinte mais próximo do instante inicial desejado
+     * Copia os registros para novos arrays, a partir da posição física 0. Os arrays anteriores permanecem inalterados
+     * para os leitores que ainda os referenciam
      *
-     * @param start
-     * @return
+     * @param capacity
      */
-    private Instant getClosestStart(Instant start) {
-        if (start == null) {
-            return data.firstKey();
+    private void detach(int capacity) {
+        final int length = capacity <= times.length - (times.length >> 2)
+                ? times.length
+                : Math.max(capacity, times.length + (times.length >> 1));
+
+        final long[] newTimes = new long[length];
+        System.arraycopy(times, head, newTimes, 0, size);
+        times = newTimes;
+        if (retainItems) {
+            final Object[] newItems = new Object[length];
+            System.arraycopy(items, head, newItems, 0, size);
+            items = newItems;
         }
+        head = 0;
+    }
 
-        for (Instant time : data.keySet()) {
-            if (time.equals(start) || time.isBefore(start)) {
-                return time;
+    /**
+     * Descarta todos os registros, em O(1)
+     *
+     * @return A quantidade de registros descartados
+     */
+    private int clear() {
+        final int count = size;
+        if (count > 0) {
+            if (!retainItems) {
+                evict(count);
+            } else if (!concurrent) {
+                Arrays.fill(items, head, head + count, null);
             }
+            head += count;
+            size = 0;
         }
-        // Não existe registro para o instante solicitado
-        return start;
+        return count;
     }
 
     /**
-     * Obtém o item anterior mais próximo do instante final desejado
+     * Descarta os registros mais antigos que excedem a política de retenção, em O(1) (apenas desloca o head)
      *
-     * @param stop
-     * @return
+     * @return A quantidade de registros descartados
+     */
+    private int applyRetention() {
+        if (retention.isUnlimited() || size == 0) {
+            return 0;
+        }
+
+        int count = Math.max(0, size - retention.maxCount(bytesPerItem()));
+
+        if (retention.maxAge != null) {
+            final long newest = times[head + size - 1];
+            final long limit = newest - retention.maxAge.toMillis();
+            if (limit > times[head]) {
+                // Quantidade de registros mais antigos do que o limite
+                final int index = Arrays.binarySearch(times, head, head + size, limit);
+                count = Math.max(count, (index >= 0 ? index : -(index + 1)) - head);
+            }
+        }
+
+        if (count == 0) {
+            return 0;
+        }
+
+        if (!retainItems) {
+            evict(count);
+        } else if (!concurrent) {
+            // No modo concorrente os leitores ainda podem referenciar os itens
+            Arrays.fill(items, head, head + count, null);
+        }
+        head += count;
+        size -= count;
+        return count;
+    }
+
+    /**
+     * Insere o registro na posição cronológica informada, deslocando apenas os registros mais recentes
+     *
+     * @param position
+     * @param key
+     * @param item
+     */
+    private void insert(int position, long key, T item) {
+        if (position < size && concurrent) {
+            // Os registros existentes serão deslocados, não altera os arrays visíveis aos leitores
+            detach(size + 1);
+        } else {
+            ensureCapacity(size + 1);
+        }
+
+        final int index = head + position;
+        final int moved = size - position;
+        if (moved > 0) {
+            System.arraycopy(times, index, times, index + 1, moved);
+            if (retainItems) {
+                System.arraycopy(items, index, items, index + 1, moved);
+            }
+        }
+
+        times[index] = key;
+        if (retainItems) {
+            items[index] = item;
+        }
+        size++;
+
+        if (!retainItems) {
+            store(position, item);
+        }
+    }
+
+    /**
+     * Percorre os registros de um estado publicado, por indice (0 = mais recente), diretamente sobre os arrays
+     */
+    private final class Entries implements Spliterator<Map.Entry<Instant, T>> {
+
+        private final State s;
+
+        private int index;
+
+        private final int end;
+
+        Entries(State s, int index, int end) {
+            this.s = s;
+            this.index = index;
+            this.end = end;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Map.Entry<Instant, T>> action) {
+            if (index >= end) {
+                return false;
+            }
+            action.accept(entry(s.size - 1 - index++));
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super Map.Entry<Instant, T>> action) {
+            for (int position = s.size - 1 - index; index < end; index++, position--) {
+                action.accept(entry(position));
+            }
+        }
+
+        @Override
+        public Spliterator<Map.Entry<Instant, T>> trySplit() {
+            final int middle = (index + end) >>> 1;
+            if (middle <= index) {
+                return null;
+            }
+            // Os registros mais recentes ficam com a parte separada, mantendo a ordem de encontro
+            final Entries prefix = new Entries(s, index, middle);
+            index = middle;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return end - index;
+        }
+
+        @Override
+        public int characteristics() {
+            // Fora do modo concorrente, o escritor modifica os arrays publicados
+            return ORDERED | SIZED | SUBSIZED | NONNULL | (concurrent || readOnly ? IMMUTABLE : 0);
+        }
+
+        private Map.Entry<Instant, T> entry(int position) {
+            return new AbstractMap.SimpleImmutableEntry<>(s.instant(position), item(s, position));
+        }
+    }
+
+    /**
+     * Estado imutável de um TimeSeries, publicado pelo escritor após cada alteração.
+     *
+     * As posições físicas entre <code>head</code> e <code>head + size</code> dos arrays referenciados nunca são
+     * modificadas no modo concorrente, permitindo que os leitores trabalhem sobre o estado sem bloqueio
      */
-    private Instant getClosestStop(Instant stop) {
-        if (stop == null) {
-            return data.lastKey();
+    protected static final class State {
+
+        final long[] times;
+
+        final Object[] items;
+
+        final int head;
+
+        final int size;
+
+        /**
+         * Número de versão, incrementado a cada alteração publicada
+         */
+        final long version;
+
+        /**
+         * Geração das posições dos registros, incrementada quando registros antigos são adicionados ou todos os
+         * registros são substituídos.
+         *
+         * Publicada junto com os arrays, permite que os índices derivados das posições (ex. {@link RangeIndex}) detectem
+         * que foram construídos sobre outras posições
+         */
+        final int generation;
+
+        /**
+         * Visão do armazenamento da implementação, quando o TimeSeries não mantém os itens
+         */
+        final Object storage;
+
+        /**
+         * O registro mais recente no momento da publicação, no modo concorrente
+         */
+        final Object newest;
+
+        State(long[] times, Object[] items, int head, int size, long version, int generation, Object storage,
+                Object newest) {
+            this.times = times;
+            this.items = items;
+            this.head = head;
+            this.size = size;
+            this.version = version;
+            this.generation = generation;
+            this.storage = storage;
+            this.newest = newest;
         }
-        Instant prev = null;
-        for (Instant time : data.keySet()) {
-            if (time.equals(stop)) {
-                return time;
+
+        Instant instant(int position) {
+            return Instant.ofEpochMilli(times[head + position]);
+        }
+
+        /**
+         * Obtém o indice (0 = mais recente) do item seguinte mais próximo do instante inicial desejado
+         *
+         * @param start
+         * @return O indice, ou -1 se não existir registro para o instante
+         */
+        int startIndex(Instant start) {
+            final int position = closestStart(start);
+            return position < 0 ? -1 : size - 1 - position;
+        }
+
+        /**
+         * Obtém o indice (0 = mais recente) do item anterior mais próximo do instante final desejado
+         *
+         * @param stop
+         * @return O indice, ou -1 se não existir registro para o instante
+         */
+        int stopIndex(Instant stop) {
+            final int position = closestStop(stop);
+            return position >= size ? -1 : size - 1 - position;
+        }
+
+        /**
+         * Copia os instantes a partir do indice (0 = mais recente), do mais recente para o mais antigo
+         *
+         * @param start
+         * @param count
+         * @param unit Divisor aplicado aos epoch millis (1 = millis, 1000 = seconds)
+         * @return
+         */
+        long[] times(int start, int count, long unit) {
+            if (start < 0 || start >= size || count <= 0) {
+                return new long[0];
+            }
+            final long[] out = new long[Math.min(count, size - start)];
+            for (int i = 0, position = head + size - 1 - start; i < out.length; i++, position--) {
+                out[i] = Math.floorDiv(times[position], unit);
+            }
+            return out;
+        }
+
+        /**
+         * Obtém as posições cronológicas a partir do indice (0 = mais recente), do mais recente para o mais antigo
+         *
+         * @param start
+         * @param count
+         * @return
+         */
+        IntStream positions(int start, int count) {
+            if (start < 0 || start >= size || count <= 0) {
+                return IntStream.empty();
+            }
+            return range(start, Math.min(size, start + count) - 1);
+        }
+
+        /**
+         * Obtém as posições cronológicas entre os indices informados (inclusivos), do mais recente para o mais antigo
+         *
+         * @param startIndex
+         * @param stopIndex
+         * @return
+         */
+        IntStream range(int startIndex, int stopIndex) {
+            if (startIndex < 0 || stopIndex < startIndex) {
+                return IntStream.empty();
             }
-            if (time.isBefore(stop)) {
-                return prev == null ? data.firstKey() : prev;
+            final int last = size - 1;
+            return IntStream.rangeClosed(startIndex, stopIndex).map(index -> last - index);
+        }
+
+        /**
+         * Obtém a posição cronológica do item seguinte mais próximo do instante inicial desejado, em O(log n)
+         *
+         * @param start
+         * @return A posição, ou -1 se não existir registro para o instante solicitado
+         */
+        int closestStart(Instant start) {
+            if (start == null) {
+                return size - 1;
+            }
+
+            final int position = search(key(start));
+            if (position >= 0) {
+                return position;
+            }
+            // O registro anterior ao ponto de inserção, -1 se não existir registro para o instante solicitado
+            return -(position + 1) - 1;
+        }
+
+        /**
+         * Obtém a posição cronológica do item anterior mais próximo do instante final desejado, em O(log n)
+         *
+         * @param stop
+         * @return A posição, ou size se não existir registro para o instante solicitado
+         */
+        int closestStop(Instant stop) {
+            if (stop == null) {
+                return 0;
+            }
+
+            final int position = search(key(stop));
+            if (position >= 0) {
+                return position;
+            }
+            // O ponto de inserção é o primeiro registro mais recente do que o instante
+            return -(position + 1);
+        }
+
+        /**
+         * Busca binária pela chave nas posições cronológicas
+         *
+         * @param key
+         * @return A posição, se existir, ou <code>-(ponto de inserção) - 1</code>
+         */
+        int search(long key) {
+            if (size > 0 && times[head + size - 1] == key) {
+                // Acesso mais comum, o registro mais recente
+                return size - 1;
             }
-            prev = time;
+            final int index = Arrays.binarySearch(times, head, head + size, key);
+            return index >= 0 ? index - head : index + head;
         }
-        return data.lastKey();
     }
 }
@@ -1,8 +1,14 @@
 package com.github.nidorx.jtrade.core.impl;
 
+import com.github.nidorx.jtrade.core.AppliedPrice;
 import com.github.nidorx.jtrade.core.Rate;
+import com.github.nidorx.jtrade.core.RateVisitor;
 import java.time.Instant;
 import com.github.nidorx.jtrade.core.TimeSeriesRate;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Implementação para permitir que o Broker faça o gerenciamento dos valores do TimeSéries
@@ -11,109 +17,405 @@ import com.github.nidorx.jtrade.core.TimeSeriesRate;
  */
 public final class TimeSeriesRateImpl extends TimeSeriesAbstract<Rate> implements TimeSeriesRate {
 
+    private final STORAGE storage;
+
+    /**
+     * Armazenamento dos registros, quando não usado o armazenamento {@link STORAGE#OBJECT}. Uso exclusivo do escritor,
+     * as leituras usam a visão publicada junto com o estado do TimeSeries
+     */
+    private final RateStorage rates;
+
+    /**
+     * Índices das consultas por intervalo, criados sob demanda para cada preço
+     */
+    private final Map<AppliedPrice, RangeIndex> ranges = new ConcurrentHashMap<>();
+
+    public TimeSeriesRateImpl() {
+        this(STORAGE.OBJECT);
+    }
+
+    public TimeSeriesRateImpl(STORAGE storage) {
+        this(storage, RetentionPolicy.UNLIMITED);
+    }
+
+    public TimeSeriesRateImpl(STORAGE storage, RetentionPolicy retention) {
+        this(storage, retention, false);
+    }
+
+    /**
+     * @param storage
+     * @param retention
+     * @param concurrent Permite leituras sem bloqueio em outras threads enquanto o Broker adiciona registros
+     */
+    public TimeSeriesRateImpl(STORAGE storage, RetentionPolicy retention, boolean concurrent) {
+        super(storage == STORAGE.OBJECT, retention, concurrent);
+        this.storage = storage;
+        this.rates = storage(storage, concurrent);
+    }
+
+    /**
+     * Visão imutável do estado atual do TimeSeries informado
+     *
+     * @param source
+     */
+    private TimeSeriesRateImpl(TimeSeriesRateImpl source) {
+        super(source);
+        this.storage = source.storage;
+        this.rates = null;
+    }
+
+    private static RateStorage storage(STORAGE storage, boolean concurrent) {
+        switch (storage) {
+            case COLUMNAR:
+                return new RateColumns(concurrent);
+            case COMPRESSED:
+                return new RateBlocks(concurrent);
+            case OFF_HEAP:
+                return new RateBuffers(concurrent);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Descarta todos os registros deste TimeSeries.
+     *
+     * No armazenamento {@link STORAGE#OFF_HEAP}, os registros passam para um buffer mínimo. A memória fora do heap do
+     * buffer anterior é devolvida apenas quando o coletor de lixo o descartar, após nenhum snapshot referenciá-lo
+     */
+    public void release() {
+        reset(Collections.emptyList());
+    }
+
     @Override
     protected Instant extract(Rate item) {
         return item.time;
     }
 
+    @Override
+    protected void store(int position, Rate item) {
+        rates.insert(position, item);
+    }
+
+    @Override
+    protected void replace(int position, Rate item) {
+        rates.replace(position, item);
+    }
+
+    @Override
+    protected void merge(List<Rate> items, int[] positions) {
+        rates.merge(items, positions);
+    }
+
+    @Override
+    protected Object storage() {
+        return rates == null ? null : rates.view();
+    }
+
+    @Override
+    protected Object snapshotStorage() {
+        return rates == null ? null : rates.snapshot();
+    }
+
+    @Override
+    protected Rate load(Object storage, int position) {
+        return ((RateStorage) storage).rate(position);
+    }
+
+    @Override
+    protected void evict(int count) {
+        rates.evict(count);
+    }
+
+    @Override
+    protected int bytesPerItem() {
+        if (storage == STORAGE.OBJECT) {
+            return super.bytesPerItem();
+        }
+        return Long.BYTES + rates.bytesPerItem();
+    }
+
+    @Override
+    public int iHighest(AppliedPrice price, int start, int count) {
+        final State s = state();
+        return range(price).best(s, s.generation, values(s, price), start, count, true);
+    }
+
+    @Override
+    public int iLowest(AppliedPrice price, int start, int count) {
+        final State s = state();
+        return range(price).best(s, s.generation, values(s, price), start, count, false);
+    }
+
+    @Override
+    public double highest(AppliedPrice price, int start, int count) {
+        final State s = state();
+        return range(price).value(s, s.generation, values(s, price), start, count, true);
+    }
+
+    @Override
+    public double highest(AppliedPrice price, Instant start, Instant stop) {
+        final State s = state();
+        final int startIndex = s.startIndex(start);
+        return range(price).value(s, s.generation, values(s, price), startIndex, s.stopIndex(stop) - startIndex + 1,
+                true);
+    }
+
+    @Override
+    public double lowest(AppliedPrice price, int start, int count) {
+        final State s = state();
+        return range(price).value(s, s.generation, values(s, price), start, count, false);
+    }
+
+    @Override
+    public double lowest(AppliedPrice price, Instant start, Instant stop) {
+        final State s = state();
+        final int startIndex = s.startIndex(start);
+        return range(price).value(s, s.generation, values(s, price), startIndex, s.stopIndex(stop) - startIndex + 1,
+                false);
+    }
+
+    @Override
+    public double sum(AppliedPrice price, int start, int count) {
+        final State s = state();
+        return range(price).sum(s, s.generation, values(s, price), start, count);
+    }
+
+    @Override
+    public double mean(AppliedPrice price, int start, int count) {
+        final State s = state();
+        final int total = Math.min(count, s.size - start);
+        if (start < 0 || total <= 0) {
+            return Double.NaN;
+        }
+        return range(price).sum(s, s.generation, values(s, price), start, count) / total;
+    }
+
+    /**
+     * Obtém o índice de consultas por intervalo do preço informado
+     *
+     * @param price
+     * @return
+     */
+    private RangeIndex range(AppliedPrice price) {
+        return ranges.computeIfAbsent(price, p -> new RangeIndex());
+    }
+
+    /**
+     * Acesso aos valores do preço no estado informado
+     *
+     * @param s
+     * @param price
+     * @return
+     */
+    private RangeIndex.Values values(State s, AppliedPrice price) {
+        if (storage == STORAGE.OBJECT || !isStored(price)) {
+            return (index, count) -> {
+                final double[] out = new double[Math.max(0, Math.min(count, s.size - index))];
+                for (int i = 0; i < out.length; i++) {
+                    out[i] = price.apply(item(s, s.size - 1 - index - i));
+                }
+                return out;
+            };
+        }
+        return (index, count) -> values(s, index, count, price);
+    }
+
+    private static boolean isStored(AppliedPrice price) {
+        return price == AppliedPrice.OPEN || price == AppliedPrice.HIGH || price == AppliedPrice.LOW
+                || price == AppliedPrice.CLOSE;
+    }
+
+    @Override
+    public TimeSeriesRate snapshot() {
+        return new TimeSeriesRateImpl(this);
+    }
+
     @Override
     public double[] open(int count) {
-        return list(count).stream().mapToDouble(r -> r.open).toArray();
+        return values(0, count, AppliedPrice.OPEN);
     }
 
     @Override
     public double[] open(Instant stop) {
-        return list(stop).stream().mapToDouble(r -> r.open).toArray();
+        return values(null, stop, AppliedPrice.OPEN);
     }
 
     @Override
     public double[] open(int start, int count) {
-        return list(start, count).stream().mapToDouble(r -> r.open).toArray();
+        return values(start, count, AppliedPrice.OPEN);
     }
 
     @Override
     public double[] open(Instant start, int count) {
-        return list(start, count).stream().mapToDouble(r -> r.open).toArray();
+        return values(start, count, AppliedPrice.OPEN);
     }
 
     @Override
     public double[] open(Instant start, Instant stop) {
-        return list(start, stop).stream().mapToDouble(r -> r.open).toArray();
+        return values(start, stop, AppliedPrice.OPEN);
     }
 
     @Override
     public double[] close(int count) {
-        return list(count).stream().mapToDouble(r -> r.close).toArray();
+        return values(0, count, AppliedPrice.CLOSE);
     }
 
     @Override
     public double[] close(Instant stop) {
-        return list(stop).stream().mapToDouble(r -> r.close).toArray();
+        return values(null, stop, AppliedPrice.CLOSE);
     }
 
     @Override
     public double[] close(int start, int count) {
-        return list(start, count).stream().mapToDouble(r -> r.close).toArray();
+        return values(start, count, AppliedPrice.CLOSE);
     }
 
     @Override
     public double[] close(Instant start, int count) {
-        return list(start, count).stream().mapToDouble(r -> r.close).toArray();
+        return values(start, count, AppliedPrice.CLOSE);
     }
 
     @Override
     public double[] close(Instant start, Instant stop) {
-        return list(start, stop).stream().mapToDouble(r -> r.close).toArray();
+        return values(start, stop, AppliedPrice.CLOSE);
     }
 
     @Override
     public double[] high(int count) {
-        return list(count).stream().mapToDouble(r -> r.high).toArray();
+        return values(0, count, AppliedPrice.HIGH);
     }
 
     @Override
     public double[] high(Instant stop) {
-        return list(stop).stream().mapToDouble(r -> r.high).toArray();
+        return values(null, stop, AppliedPrice.HIGH);
     }
 
     @Override
     public double[] high(int start, int count) {
-        return list(start, count).stream().mapToDouble(r -> r.high).toArray();
+        return values(start, count, AppliedPrice.HIGH);
     }
 
     @Override
     public double[] high(Instant start, int count) {
-        return list(start, count).stream().mapToDouble(r -> r.high).toArray();
+        return values(start, count, AppliedPrice.HIGH);
     }
 
     @Override
     public double[] high(Instant start, Instant stop) {
-        return list(start, stop).stream().mapToDouble(r -> r.high).toArray();
+        return values(start, stop, AppliedPrice.HIGH);
     }
 
     @Override
     public double[] low(int count) {
-        return list(count).stream().mapToDouble(r -> r.low).toArray();
+        return values(0, count, AppliedPrice.LOW);
     }
 
     @Override
     public double[] low(Instant stop) {
-        return list(stop).stream().mapToDouble(r -> r.low).toArray();
+        return values(null, stop, AppliedPrice.LOW);
     }
 
     @Override
     public double[] low(int start, int count) {
-        return list(start, count).stream().mapToDouble(r -> r.low).toArray();
+        return values(start, count, AppliedPrice.LOW);
     }
 
     @Override
     public double[] low(Instant start, int count) {
-        return list(start, count).stream().mapToDouble(r -> r.low).toArray();
+        return values(start, count, AppliedPrice.LOW);
     }
 
     @Override
     public double[] low(Instant start, Instant stop) {
-        return list(start, stop).stream().mapToDouble(r -> r.low).toArray();
+        return values(start, stop, AppliedPrice.LOW);
+    }
+
+    @Override
+    public int forEach(int start, int count, RateVisitor visitor) {
+        final State s = state();
+        if (start < 0 || start >= s.size || count <= 0) {
+            return 0;
+        }
+        final int total = Math.min(count, s.size - start);
+        if (storage != STORAGE.OBJECT) {
+            return ((RateStorage) s.storage).forEach(start, total, visitor);
+        }
+        for (int index = start, position = s.size - 1 - start; index < start + total; index++, position--) {
+            final Rate r = item(s, position);
+            visitor.accept(index, r.time.getEpochSecond(), r.open, r.high, r.low, r.close, r.volumeTick);
+        }
+        return total;
     }
 
+    /**
+     * Obtém os valores de uma propriedade do Rate a partir do indice informado.
+     *
+     * Nos armazenamentos primitivos, a cópia é feita diretamente do armazenamento, sem materializar os Rate
+     *
+     * @param start
+     * @param count
+     * @param price
+     * @return
+     */
+    private double[] values(int start, int count, AppliedPrice price) {
+        if (storage == STORAGE.OBJECT) {
+            return list(start, count).stream().mapToDouble(price::apply).toArray();
+        }
+        return values(state(), start, count, price);
+    }
+
+    private double[] values(Instant start, int count, AppliedPrice price) {
+        if (storage == STORAGE.OBJECT) {
+            return list(start, count).stream().mapToDouble(price::apply).toArray();
+        }
+        final State s = state();
+        return values(s, s.startIndex(start), count, price);
+    }
+
+    private double[] values(Instant start, Instant stop, AppliedPrice price) {
+        if (storage == STORAGE.OBJECT) {
+            return list(start, stop).stream().mapToDouble(price::apply).toArray();
+        }
+
+        final State s = state();
+        final int startIndex = s.startIndex(start);
+        final int stopIndex = s.stopIndex(stop);
+        if (startIndex < 0 || stopIndex < startIndex) {
+            return new double[0];
+        }
+        return values(s, startIndex, stopIndex - startIndex + 1, price);
+    }
+
+    private double[] values(State s, int start, int count, AppliedPrice price) {
+        if (start < 0 || start >= s.size) {
+            return new double[0];
+        }
+        return ((RateStorage) s.storage).copy(price, start, count);
+    }
+
+    /**
+     * Formas de armazenamento dos registros do TimeSeries
+     */
+    public enum STORAGE {
+        /**
+         * Os registros são mantidos como instâncias de {@link Rate}
+         */
+        OBJECT,
+        /**
+         * Os registros são mantidos em arrays primitivos por coluna (time, open, high, low, close, volume), os
+         * {@link Rate} são materializados apenas quando solicitados
+         */
+        COLUMNAR,
+        /**
+         * Os registros são comprimidos em blocos (delta-of-delta no tempo e XOR nos preços), reduzindo o consumo de
+         * memória de longos históricos. O candle mais recente continua sendo substituído em O(1)
+         */
+        COMPRESSED,
+        /**
+         * Os registros são mantidos fora do heap, em buffers diretos, evitando que longos históricos sejam percorridos
+         * pelo coletor de lixo. Use {@link TimeSeriesRateImpl#release()} para descartar os registros
+         */
+        OFF_HEAP
+    }
 }
@@ -8,7 +8,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import com.github.nidorx.jtrade.core.Rate;
 import com.github.nidorx.jtrade.core.TimeSeriesRate;
+import com.github.nidorx.jtrade.core.TimeSeriesUpdate;
 
 /**
  * Representação de um indicador de uma Timeserie
@@ -34,6 +36,29 @@ public abstract class Indicator {
      */
     private int lastCalculated = -1;
 
+    /**
+     * Instante do registro mais antigo mantido pelo TimeSeries, após o descarte de registros pela política de retenção.
+     *
+     * Os valores anteriores a este instante são descartados no próximo cálculo
+     */
+    private Instant retainedSince;
+
+    /**
+     * Instante do registro mais recente do TimeSeries substituído após o último cálculo (ex. candle em formação).
+     *
+     * Apenas o último valor é recalculado
+     */
+    private Instant lastUpdated;
+
+    /**
+     * Instante do registro mais antigo alterado no TimeSeries após o último cálculo (ex. preenchimento de uma lacuna no
+     * histórico).
+     *
+     * Os valores a partir deste instante são descartados e recalculados, os valores anteriores são mantidos.
+     * {@link Instant#MIN} quando todos os valores precisam ser recalculados
+     */
+    private Instant changedSince;
+
     /**
      * Os buffers de saída de dados
      */
@@ -45,11 +70,12 @@ public abstract class Indicator {
     protected TimeSeriesRate timeSeries;
 
     /**
-     * O ultimos instantes calculados por este indicador.
+     * O ultimos instantes calculados por este indicador, em ordem cronológica (o último item é o mais recente).
      *
-     * Permite que a implementação do indicador verifique os itens calculados anteriormente
+     * Permite que a implementação do indicador verifique os itens calculados anteriormente. Os instantes descartados
+     * pela política de retenção são removidos do início da lista em O(1)
      */
-    protected List<Instant> calculated = new ArrayList<>();
+    protected final List<Instant> calculated = new InstantList();
 
     /**
      * Necessário determinar a quantidade de buffers que o Indiacador vai usar para dados.
@@ -78,13 +104,29 @@ public abstract class Indicator {
 
     }
 
+    /**
+     * Permite a implementação do indicador descartar o estado interno a partir do instante informado, antes do
+     * recálculo dos valores a partir deste instante.
+     *
+     * Os valores dos buffers de saída e os {@link #calculated instantes calculados} a partir do instante já são
+     * descartados. Indicadores que mantém estado que não pode ser revertido devem retornar <code>false</code>, forçando
+     * o recálculo de todos os valores
+     *
+     * @param instant O instante do registro mais antigo alterado, ou {@link Instant#MIN} quando todos os valores são
+     * recalculados
+     * @return <code>true</code> se o indicador pode continuar o cálculo a partir do instante
+     */
+    protected boolean rollback(Instant instant) {
+        return true;
+    }
+
     /**
      * Remove um handle deste indicador e libera o bloco de cálculo.
      *
      * Ao fazer isso, este indicador deixa de receber atualizações do {@link TimeSeriesRate} e portanto, não realiza mais
      * calculos
      */
-    public void release() {
+    public synchronized void release() {
         if (timeSeries != null) {
             cancelListener.cancel();
         }
@@ -96,6 +138,9 @@ public abstract class Indicator {
         cancelListener = null;
         tsLastUpdate = 0;
         lastCalculated = -1;
+        retainedSince = null;
+        lastUpdated = null;
+        changedSince = null;
         calculated.clear();
     }
 
@@ -107,51 +152,70 @@ public abstract class Indicator {
      *
      * @param ts
      */
-    public void appendTo(final TimeSeriesRate ts) {
+    public synchronized void appendTo(final TimeSeriesRate ts) {
         release();
         this.timeSeries = ts;
-        cancelListener = ts.onUpdate((addedOldData) -> {
-            tsLastUpdate++;
+        cancelListener = ts.onUpdate((update) -> {
+            onUpdate(ts, update);
+        });
+    }
 
-            // Quando o timeséries recebe valores antigos, força o re-calculo do indicador
-            if (addedOldData) {
-                lastCalculated = -1;
-                calculated.clear();
+    /**
+     * Registra uma alteração do TimeSeries, o cálculo é realizado apenas quando o resultado for solicitado.
+     *
+     * Executado pela thread que alterou o TimeSeries, sincronizado com o {@link #update() cálculo}, que pode estar
+     * sendo executado por outra thread
+     *
+     * @param ts
+     * @param update
+     */
+    private synchronized void onUpdate(TimeSeriesRate ts, TimeSeriesUpdate update) {
+        if (ts != timeSeries) {
+            // Notificação atrasada de um TimeSeries do qual este indicador já foi desconectado
+            return;
+        }
+
+        tsLastUpdate++;
+
+        // Quando o timeséries recebe valores antigos, força o re-calculo do indicador a partir do registro mais
+        // antigo alterado
+        if (update.oldValuesAdded) {
+            final Instant since = update.changedSince == null ? Instant.MIN : update.changedSince;
+            if (changedSince == null || since.isBefore(changedSince)) {
+                changedSince = since;
             }
-        });
+            lastCalculated = -1;
+        }
+
+        // Apenas o registro mais recente foi alterado, recalcula somente o último valor
+        if (update.lastUpdated) {
+            if (lastUpdated != null && !lastUpdated.equals(update.newest)) {
+                // O registro substituído anteriormente deixou de ser o mais recente, recalcula a partir dele
+                if (changedSince == null || lastUpdated.isBefore(changedSince)) {
+                    changedSince = lastUpdated;
+                }
+            }
+            lastUpdated = update.newest;
+        }
+
+        // O timeséries descartou os registros mais antigos, o indicador passa a trabalhar na janela mantida
+        if (update.evicted > 0) {
+            final Rate first = ts.first();
+            retainedSince = first == null ? Instant.MAX : first.time;
+        }
     }
 
     /**
      * Obtém os dados de processamento do indicador, com ordenação invertida, assim como o TimeSeries (Mais recente =
      * indice 0)
      *
+     * Cria uma cópia de todos os valores calculados, para obter apenas os valores mais recentes use
+     * {@link #value(int, int)}, {@link #values(int, int, int, double[])} ou {@link #cursor(int)}
+     *
      * @return
      */
-    public final List<Map<Instant, IndicatorOutput>> getOutput() {
-        // Verifica se é necessário realizar calculos
-        if (tsLastUpdate > lastCalculated) {
-
-            // Ordena de forma inversa a lista
-            Collections.sort(calculated, (a, b) -> {
-                // Indice 0 deve ser o valor mais recente
-                return b.compareTo(a);
-            });
-
-            // Obtém os itens que precisam ser processados ainda
-            final Instant prev = calculated.isEmpty() ? null : calculated.get(0);
-            timeSeries.time(prev).stream()
-                    // Ordena do mais antigo para o mais novo (no TimeSeries, o indice 0 é o mais recente)
-                    .sorted((a, b) -> a.compareTo(b))
-                    .forEach(instant -> {
-                        if (instant.equals(prev)) {
-                            // Já fez este processamento
-                            return;
-                        }
-                        this.calculate(instant);
-                        this.calculated.add(instant);
-                    });
-            lastCalculated = tsLastUpdate;
-        }
+    public final synchronized List<Map<Instant, IndicatorOutput>> getOutput() {
+        update();
 
         final List<Map<Instant, IndicatorOutput>> result = new ArrayList<>();
 
@@ -172,6 +236,123 @@ public abstract class Indicator {
         return result;
     }
 
+    /**
+     * Obtém um valor de um buffer de saída, sem cópias
+     *
+     * @param buffer O indice do buffer de saída
+     * @param shift A posição do valor, do mais recente (0) para o mais antigo
+     * @return O valor, ou {@link Double#NaN} se a posição não possui valor
+     */
+    public final synchronized double value(int buffer, int shift) {
+        update();
+        return getBuffer(buffer).value(shift);
+    }
+
+    /**
+     * Copia os valores de um buffer de saída, do mais recente para o mais antigo
+     *
+     * @param buffer O indice do buffer de saída
+     * @param start A posição inicial (0 = valor mais recente)
+     * @param count
+     * @param dst O array de destino
+     * @return A quantidade de valores copiados
+     */
+    public final synchronized int values(int buffer, int start, int count, double[] dst) {
+        update();
+        return getBuffer(buffer).values(start, count, dst);
+    }
+
+    /**
+     * Obtém um cursor sobre os valores de um buffer de saída, do mais recente para o mais antigo.
+     *
+     * O cursor lê diretamente o buffer, fora da sincronização do indicador. Quando a instância é compartilhada entre
+     * threads, use {@link #value(int, int)} ou {@link #values(int, int, int, double[])}
+     *
+     * @param buffer O indice do buffer de saída
+     * @return
+     */
+    public final IndicatorBuffer.Cursor cursor(int buffer) {
+        update();
+        return getBuffer(buffer).cursor();
+    }
+
+    /**
+     * Realiza os cálculos pendentes, quando o TimeSeries foi alterado após o último cálculo.
+     *
+     * Sincronizado, pois a mesma instância pode ser compartilhada por várias estratégias (ver
+     * {@link IndicatorRegistry}) e as alterações do TimeSeries são {@link #onUpdate(TimeSeriesRate, TimeSeriesUpdate)
+     * registradas} pela thread que escreve no TimeSeries
+     */
+    private synchronized void update() {
+        if (retainedSince == null && changedSince == null && tsLastUpdate <= lastCalculated) {
+            return;
+        }
+
+        if (retainedSince != null) {
+            final Instant oldest = retainedSince;
+            retainedSince = null;
+            // Os instantes calculados estão em ordem cronológica, descarta apenas o prefixo
+            int to = Collections.binarySearch(calculated, oldest);
+            to = to < 0 ? -(to + 1) : to;
+            calculated.subList(0, to).clear();
+            if (data != null) {
+                for (IndicatorBuffer buffer : data) {
+                    if (buffer != null) {
+                        buffer.removeBefore(oldest);
+                    }
+                }
+            }
+        }
+
+        if (changedSince != null) {
+            Instant since = changedSince;
+            changedSince = null;
+            if (!rollback(since)) {
+                since = Instant.MIN;
+            }
+
+            // Os instantes calculados estão em ordem cronológica, descarta apenas o sufixo alterado
+            int from = Collections.binarySearch(calculated, since);
+            from = from < 0 ? -(from + 1) : from;
+            calculated.subList(from, calculated.size()).clear();
+            if (data != null) {
+                for (IndicatorBuffer buffer : data) {
+                    if (buffer != null) {
+                        buffer.removeFrom(since);
+                    }
+                }
+            }
+        }
+
+        // Verifica se é necessário realizar calculos
+        if (tsLastUpdate > lastCalculated && timeSeries != null) {
+
+            // Obtém os itens que precisam ser processados ainda
+            final Instant prev = calculated.isEmpty() ? null : calculated.get(calculated.size() - 1);
+
+            if (prev != null && prev.equals(lastUpdated)) {
+                // O registro mais recente foi substituído, refaz apenas o último cálculo
+                calculated.remove(calculated.size() - 1);
+                this.calculate(prev);
+                calculated.add(prev);
+            }
+            lastUpdated = null;
+
+            // Os instantes já estão ordenados no TimeSeries (indice 0 = mais recente)
+            final List<Instant> instants = timeSeries.time(prev);
+            for (int i = instants.size() - 1; i >= 0; i--) {
+                final Instant instant = instants.get(i);
+                if (instant.equals(prev)) {
+                    // Já fez este processamento
+                    continue;
+                }
+                this.calculate(instant);
+                this.calculated.add(instant);
+            }
+            lastCalculated = tsLastUpdate;
+        }
+    }
+
     /**
      * Adiciona um buffer ao Indicador.
      *
@@ -1,8 +1,10 @@
 package com.github.nidorx.jtrade.ta.indicator;
 
+import com.github.nidorx.jtrade.util.function.Cancelable;
 import java.time.Instant;
-import java.util.SortedMap;
-import java.util.TreeMap;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.function.BiConsumer;
 
 /**
@@ -10,12 +12,42 @@ import java.util.function.BiConsumer;
  *
  * Um buffer pode ser de dados (output) ou de uso interno (para fins de calculo)
  *
- * @see Indicator#createBuffer(boolean)
+ * <p>
+ * Os valores são mantidos em arrays primitivos, em ordem cronológica, alinhados com os registros do TimeSeries
+ * calculados pelo indicador (uma posição por candle). Como os indicadores calculam os registros do mais antigo para o
+ * mais recente, definir o valor do registro mais recente é uma operação O(1), assim como obter os últimos valores. As
+ * posições sem valor possuem {@link Double#NaN}. As cores são mantidas em um array separado, criado apenas quando uma
+ * cor é definida.
+ *
+ * @see Indicator#getBuffer(int)
  * @see Indicator#getOutput()
  */
 public class IndicatorBuffer {
 
-    private final SortedMap<Instant, IndicatorOutput> output = new TreeMap<>();
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * Marcador das posições sem cor
+     */
+    private static final int NO_COLOR = Integer.MIN_VALUE;
+
+    /**
+     * Instante (epoch millis) de cada posição
+     */
+    private long[] keys = new long[INITIAL_CAPACITY];
+
+    private double[] values = new double[INITIAL_CAPACITY];
+
+    private int[] colors;
+
+    /**
+     * Posição do valor mais antigo nos arrays
+     */
+    private int head = 0;
+
+    private int size = 0;
+
+    private final List<BiConsumer<Instant, Double>> listeners = new CopyOnWriteArrayList<>();
 
     /**
      * Define um valor para o instante
@@ -24,12 +56,38 @@ public class IndicatorBuffer {
      * @param value
      */
     public void value(Instant instant, Double value) {
-        Integer color = null;
-        if (output.containsKey(instant)) {
-            color = output.get(instant).color;
+        value(instant, value == null ? Double.NaN : value);
+    }
+
+    /**
+     * Define um valor para o instante, {@link Double#NaN} remove o valor
+     *
+     * @param instant
+     * @param value
+     */
+    public void value(Instant instant, double value) {
+        final int index = slot(key(instant));
+        values[index] = value;
+
+        if (!listeners.isEmpty()) {
+            final Double boxed = Double.isNaN(value) ? null : value;
+            for (BiConsumer<Instant, Double> listener : listeners) {
+                listener.accept(instant, boxed);
+            }
         }
+    }
 
-        output.put(instant, new IndicatorOutput(value, color));
+    /**
+     * Permite ser informado quando um valor for definido no buffer
+     *
+     * @param listener
+     * @return
+     */
+    public Cancelable onValue(BiConsumer<Instant, Double> listener) {
+        listeners.add(listener);
+        return () -> {
+            listeners.remove(listener);
+        };
     }
 
     /**
@@ -39,8 +97,57 @@ public class IndicatorBuffer {
      * @return
      */
     public Double value(Instant instant) {
-        IndicatorOutput out = output.get(instant);
-        return out == null ? null : out.value;
+        final double value = doubleValue(instant);
+        return Double.isNaN(value) ? null : value;
+    }
+
+    /**
+     * Obtém um valor do buffer para o instante informado, sem alocações
+     *
+     * @param instant
+     * @return O valor, ou {@link Double#NaN} se o instante não possui valor
+     */
+    public double doubleValue(Instant instant) {
+        final int index = find(key(instant));
+        return index < 0 ? Double.NaN : values[index];
+    }
+
+    /**
+     * Obtém o valor da posição informada, sem alocações
+     *
+     * @param shift A posição, do valor mais recente (0) para o mais antigo
+     * @return O valor, ou {@link Double#NaN} se a posição não possui valor
+     */
+    public double value(int shift) {
+        return shift < 0 || shift >= size ? Double.NaN : values[head + size - 1 - shift];
+    }
+
+    /**
+     * Copia os valores a partir da posição informada, do mais recente para o mais antigo
+     *
+     * @param start A posição inicial (0 = valor mais recente)
+     * @param count
+     * @param dst O array de destino, com espaço para <code>count</code> valores
+     * @return A quantidade de valores copiados, 0 se a posição inicial não possui valor
+     */
+    public int values(int start, int count, double[] dst) {
+        if (start < 0) {
+            return 0;
+        }
+        final int total = Math.max(0, Math.min(Math.min(count, dst.length), size - start));
+        for (int i = 0, index = head + size - 1 - start; i < total; i++, index--) {
+            dst[i] = values[index];
+        }
+        return total;
+    }
+
+    /**
+     * Obtém um cursor para percorrer os valores do buffer, do mais recente para o mais antigo, sem cópias
+     *
+     * @return
+     */
+    public Cursor cursor() {
+        return new Cursor();
     }
 
     /**
@@ -50,12 +157,15 @@ public class IndicatorBuffer {
      * @param color
      */
     public void color(Instant instant, Integer color) {
-        Double value = null;
-        if (output.containsKey(instant)) {
-            value = output.get(instant).value;
+        final int index = slot(key(instant));
+        if (colors == null) {
+            if (color == null) {
+                return;
+            }
+            colors = new int[keys.length];
+            Arrays.fill(colors, NO_COLOR);
         }
-
-        output.put(instant, new IndicatorOutput(value, color));
+        colors[index] = color == null ? NO_COLOR : color;
     }
 
     /**
@@ -65,8 +175,39 @@ public class IndicatorBuffer {
      * @return
      */
     public Integer color(Instant instant) {
-        IndicatorOutput out = output.get(instant);
-        return out == null ? null : out.color;
+        final int index = colors == null ? -1 : find(key(instant));
+        return index < 0 || colors[index] == NO_COLOR ? null : colors[index];
+    }
+
+    /**
+     * Quantidade de posições mantidas no buffer
+     *
+     * @return
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Descarta os valores anteriores ao instante informado
+     *
+     * @param instant
+     */
+    public void removeBefore(Instant instant) {
+        final int index = search(key(instant));
+        final int count = (index < 0 ? -(index + 1) : index) - head;
+        head += count;
+        size -= count;
+    }
+
+    /**
+     * Descarta os valores a partir do instante informado (inclusive)
+     *
+     * @param instant
+     */
+    public void removeFrom(Instant instant) {
+        final int index = search(key(instant));
+        size = (index < 0 ? -(index + 1) : index) - head;
     }
 
     /**
@@ -75,6 +216,193 @@ public class IndicatorBuffer {
      * @param action
      */
     public void forEachOutput(BiConsumer<Instant, IndicatorOutput> action) {
-        output.forEach(action);
+        for (int i = head, end = head + size; i < end; i++) {
+            final double value = values[i];
+            final int color = colors == null ? NO_COLOR : colors[i];
+            if (Double.isNaN(value) && color == NO_COLOR) {
+                continue;
+            }
+            action.accept(Instant.ofEpochMilli(keys[i]),
+                    new IndicatorOutput(Double.isNaN(value) ? null : value, color == NO_COLOR ? null : color));
+        }
+    }
+
+    /**
+     * Percorre os valores do buffer, do mais recente para o mais antigo.
+     *
+     * O cursor lê diretamente os arrays do buffer, os valores refletem o estado atual do buffer a cada chamada
+     */
+    public final class Cursor {
+
+        private int shift = -1;
+
+        private Cursor() {
+        }
+
+        /**
+         * Avança para o próximo valor (mais antigo)
+         *
+         * @return <code>false</code> quando não existem mais valores
+         */
+        public boolean next() {
+            return ++shift < size;
+        }
+
+        /**
+         * A posição atual, do valor mais recente (0) para o mais antigo
+         *
+         * @return
+         */
+        public int shift() {
+            return shift;
+        }
+
+        /**
+         * Instante da posição atual, em epoch millis
+         *
+         * @return
+         */
+        public long time() {
+            return keys[head + size - 1 - shift];
+        }
+
+        public Instant instant() {
+            return Instant.ofEpochMilli(time());
+        }
+
+        /**
+         * Valor da posição atual
+         *
+         * @return O valor, ou {@link Double#NaN} se a posição não possui valor
+         */
+        public double value() {
+            return values[head + size - 1 - shift];
+        }
+
+        /**
+         * Cor da posição atual
+         *
+         * @return
+         */
+        public Integer color() {
+            final int color = colors == null ? NO_COLOR : colors[head + size - 1 - shift];
+            return color == NO_COLOR ? null : color;
+        }
+
+        /**
+         * Materializa o {@link IndicatorOutput} da posição atual
+         *
+         * @return
+         */
+        public IndicatorOutput output() {
+            final double value = value();
+            return new IndicatorOutput(Double.isNaN(value) ? null : value, color());
+        }
+    }
+
+    /**
+     * Localiza a posição do instante, verificando primeiro as posições mais recentes
+     *
+     * @param key
+     * @return A posição nos arrays, ou -1 se o instante não possui posição
+     */
+    private int find(long key) {
+        if (size > 0 && keys[head + size - 1] == key) {
+            return head + size - 1;
+        }
+        if (size > 1 && keys[head + size - 2] == key) {
+            return head + size - 2;
+        }
+        final int index = search(key);
+        return index < 0 ? -1 : index;
+    }
+
+    /**
+     * Obtém a posição do instante, criando uma nova posição (sem valor) se necessário
+     *
+     * @param key
+     * @return
+     */
+    private int slot(long key) {
+        if (size == 0 || key > keys[head + size - 1]) {
+            // Registro mais recente, apenas adiciona ao final
+            ensureCapacity();
+            final int index = head + size++;
+            init(index, key);
+            return index;
+        }
+
+        final int index = find(key);
+        if (index >= 0) {
+            return index;
+        }
+
+        // Instante antigo, desloca as posições mais recentes
+        ensureCapacity();
+        final int position = -(search(key) + 1);
+        final int moved = head + size - position;
+        System.arraycopy(keys, position, keys, position + 1, moved);
+        System.arraycopy(values, position, values, position + 1, moved);
+        if (colors != null) {
+            System.arraycopy(colors, position, colors, position + 1, moved);
+        }
+        size++;
+        init(position, key);
+        return position;
+    }
+
+    private void init(int index, long key) {
+        keys[index] = key;
+        values[index] = Double.NaN;
+        if (colors != null) {
+            colors[index] = NO_COLOR;
+        }
+    }
+
+    private int search(long key) {
+        return Arrays.binarySearch(keys, head, head + size, key);
+    }
+
+    /**
+     * Garante espaço para mais uma posição, reaproveitando o espaço das posições descartadas quando possível
+     */
+    private void ensureCapacity() {
+        if (head + size < keys.length) {
+            return;
+        }
+
+        final int length = size < keys.length / 2 ? keys.length : keys.length + (keys.length >> 1);
+        keys = resize(keys, length);
+        values = resize(values, length);
+        if (colors != null) {
+            colors = resize(colors, length);
+        }
+        head = 0;
+    }
+
+    private long[] resize(long[] array, int length) {
+        final long[] out = array.length == length ? array : new long[length];
+        System.arraycopy(array, head, out, 0, size);
+        return out;
+    }
+
+    private double[] resize(double[] array, int length) {
+        final double[] out = array.length == length ? array : new double[length];
+        System.arraycopy(array, head, out, 0, size);
+        return out;
+    }
+
+    private int[] resize(int[] array, int length) {
+        final int[] out = array.length == length ? array : new int[length];
+        System.arraycopy(array, head, out, 0, size);
+        return out;
+    }
+
+    private static long key(Instant instant) {
+        try {
+            return instant.toEpochMilli();
+        } catch (ArithmeticException ex) {
+            return instant.isBefore(Instant.EPOCH) ? Long.MIN_VALUE : Long.MAX_VALUE;
+        }
     }
 }
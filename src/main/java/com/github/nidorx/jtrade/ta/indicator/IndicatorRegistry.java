@@ -0,0 +1,173 @@
+package com.github.nidorx.jtrade.ta.indicator;
+
+import com.github.nidorx.jtrade.core.AppliedPrice;
+import com.github.nidorx.jtrade.core.TimeSeriesRate;
+import com.github.nidorx.jtrade.ta.indicator.impl.IndicatorMovingAverage;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * Registro de indicadores compartilhados.
+ *
+ * Indicadores idênticos (mesmo TimeSeries, mesma classe e mesmos parâmetros, incluindo o {@link AppliedPrice}) são
+ * criados e associados ao TimeSeries uma única vez, permitindo que várias estratégias usem a mesma instância. Assim,
+ * cada indicador distinto é calculado uma única vez por candle e mantém uma única cópia dos seus buffers.
+ *
+ * <p>
+ * As instâncias possuem contagem de referências: cada {@link #acquire(TimeSeriesRate, Class, Supplier, Object...)}
+ * deve ser acompanhado de um {@link #release(Indicator)}. O {@link Indicator#release()} é executado apenas quando o
+ * último usuário libera o indicador, portanto os usuários não devem executar o {@link Indicator#release()} diretamente
+ * em uma instância compartilhada.
+ *
+ * @author Alex Rodin <contato@alexrodin.info>
+ */
+public class IndicatorRegistry {
+
+    /**
+     * Os indicadores compartilhados, pela identificação
+     */
+    private final Map<Key, Entry> indicators = new HashMap<>();
+
+    /**
+     * Os indicadores compartilhados, pela instância
+     */
+    private final Map<Indicator, Entry> entries = new IdentityHashMap<>();
+
+    /**
+     * Obtém a instância compartilhada de um indicador, criando e associando ao TimeSeries quando ainda não existir
+     *
+     * @param <T>
+     * @param ts O TimeSeries do indicador
+     * @param type A classe do indicador
+     * @param factory Cria o indicador com os parâmetros informados, quando ainda não existir
+     * @param parameters Os parâmetros do indicador, que diferenciam as instâncias da mesma classe
+     * @return
+     */
+    public synchronized <T extends Indicator> T acquire(TimeSeriesRate ts, Class<T> type, Supplier<T> factory,
+            Object... parameters) {
+        final Key key = new Key(ts, type, Arrays.asList(parameters));
+        Entry entry = indicators.get(key);
+        if (entry == null) {
+            final T indicator = factory.get();
+            if (!type.isInstance(indicator)) {
+                throw new IllegalArgumentException("Factory must create instances of " + type.getName());
+            }
+            indicator.appendTo(ts);
+
+            entry = new Entry(key, indicator);
+            indicators.put(key, entry);
+            entries.put(indicator, entry);
+        }
+        entry.references++;
+        return type.cast(entry.indicator);
+    }
+
+    /**
+     * Obtém a instância compartilhada de um {@link IndicatorMovingAverage}
+     *
+     * @param ts
+     * @param period
+     * @param method
+     * @param appliedPrice
+     * @return
+     */
+    public IndicatorMovingAverage movingAverage(TimeSeriesRate ts, int period, IndicatorMovingAverage.METHOD method,
+            AppliedPrice appliedPrice) {
+        return acquire(ts, IndicatorMovingAverage.class,
+                () -> new IndicatorMovingAverage(period, method, appliedPrice), period, method, appliedPrice);
+    }
+
+    /**
+     * Libera uma referência do indicador. Quando não existirem mais referências, o indicador é desconectado do
+     * TimeSeries e removido do registro
+     *
+     * @param indicator
+     * @return <code>true</code> se esta era a última referência do indicador
+     */
+    public synchronized boolean release(Indicator indicator) {
+        final Entry entry = entries.get(indicator);
+        if (entry == null) {
+            throw new IllegalArgumentException("Indicator is not registered");
+        }
+
+        if (--entry.references > 0) {
+            return false;
+        }
+
+        indicators.remove(entry.key);
+        entries.remove(indicator);
+        indicator.release();
+        return true;
+    }
+
+    /**
+     * Quantidade de referências ativas do indicador
+     *
+     * @param indicator
+     * @return
+     */
+    public synchronized int references(Indicator indicator) {
+        final Entry entry = entries.get(indicator);
+        return entry == null ? 0 : entry.references;
+    }
+
+    /**
+     * Quantidade de indicadores distintos mantidos pelo registro
+     *
+     * @return
+     */
+    public synchronized int size() {
+        return indicators.size();
+    }
+
+    /**
+     * Identificação de um indicador. O TimeSeries é comparado pela instância
+     */
+    private static final class Key {
+
+        private final TimeSeriesRate ts;
+
+        private final Class<?> type;
+
+        private final List<Object> parameters;
+
+        Key(TimeSeriesRate ts, Class<?> type, List<Object> parameters) {
+            this.ts = ts;
+            this.type = type;
+            this.parameters = parameters;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) obj;
+            return ts == other.ts && type.equals(other.type) && parameters.equals(other.parameters);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(System.identityHashCode(ts), type, parameters);
+        }
+    }
+
+    private static final class Entry {
+
+        private final Key key;
+
+        private final Indicator indicator;
+
+        private int references;
+
+        Entry(Key key, Indicator indicator) {
+            this.key = key;
+            this.indicator = indicator;
+        }
+    }
+}
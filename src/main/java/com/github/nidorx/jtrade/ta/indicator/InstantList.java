@@ -0,0 +1,96 @@
+package com.github.nidorx.jtrade.ta.indicator;
+
+import java.time.Instant;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * Lista de instantes em ordem cronológica, mantida em um array primitivo (epoch millis).
+ *
+ * Assim como no {@link IndicatorBuffer}, o array possui um deslocamento inicial (head): remover os instantes mais
+ * antigos (<code>subList(0, k).clear()</code>) e o instante mais recente são operações O(1), permitindo que o
+ * indicador acompanhe a política de retenção do TimeSeries sem percorrer todos os instantes calculados.
+ *
+ * @author Alex Rodin <contato@alexrodin.info>
+ */
+final class InstantList extends AbstractList<Instant> implements RandomAccess {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private long[] keys = new long[INITIAL_CAPACITY];
+
+    /**
+     * Posição do instante mais antigo no array
+     */
+    private int head = 0;
+
+    private int size = 0;
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Instant get(int index) {
+        checkIndex(index, size);
+        return Instant.ofEpochMilli(keys[head + index]);
+    }
+
+    @Override
+    public void add(int index, Instant instant) {
+        checkIndex(index, size + 1);
+        ensureCapacity();
+        final int position = head + index;
+        System.arraycopy(keys, position, keys, position + 1, size - index);
+        keys[position] = instant.toEpochMilli();
+        size++;
+        modCount++;
+    }
+
+    @Override
+    public Instant remove(int index) {
+        final Instant removed = get(index);
+        removeRange(index, index + 1);
+        return removed;
+    }
+
+    @Override
+    protected void removeRange(int fromIndex, int toIndex) {
+        final int count = toIndex - fromIndex;
+        if (count <= 0) {
+            return;
+        }
+        if (fromIndex == 0) {
+            // Instantes mais antigos, apenas desloca o head
+            head += count;
+        } else if (toIndex < size) {
+            System.arraycopy(keys, head + toIndex, keys, head + fromIndex, size - toIndex);
+        }
+        size -= count;
+        if (size == 0) {
+            head = 0;
+        }
+        modCount++;
+    }
+
+    /**
+     * Garante espaço para mais um instante, reaproveitando o espaço dos instantes descartados quando possível
+     */
+    private void ensureCapacity() {
+        if (head + size < keys.length) {
+            return;
+        }
+        final long[] out = size < keys.length / 2 ? keys : Arrays.copyOf(keys, keys.length + (keys.length >> 1));
+        System.arraycopy(keys, head, out, 0, size);
+        keys = out;
+        head = 0;
+    }
+
+    private static void checkIndex(int index, int length) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + (length));
+        }
+    }
+}
@@ -3,8 +3,9 @@ package com.github.nidorx.jtrade.ta.indicator.impl;
 import com.github.nidorx.jtrade.core.AppliedPrice;
 import com.github.nidorx.jtrade.ta.indicator.IndicatorBuffer;
 import com.github.nidorx.jtrade.ta.indicator.Indicator;
+import com.github.nidorx.jtrade.core.Rate;
 import java.time.Instant;
-import java.util.concurrent.atomic.DoubleAdder;
+import java.util.List;
 
 /**
  * Moving Average.
@@ -27,6 +28,42 @@ public class IndicatorMovingAverage extends Indicator {
 
     private final AppliedPrice appliedPrice;
 
+    /**
+     * Os últimos preços do período (buffer circular), usados no cálculo do SMA, SMMA e LWMA
+     */
+    private final double[] window;
+
+    /**
+     * Posição do próximo preço no buffer circular
+     */
+    private int next;
+
+    /**
+     * Quantidade de preços no buffer circular
+     */
+    private int count;
+
+    /**
+     * Soma dos preços no buffer circular
+     */
+    private double sum;
+
+    /**
+     * Soma dos preços no buffer circular ponderada pela posição (o preço mais recente possui o maior peso)
+     */
+    private double weighted;
+
+    /**
+     * Instante do último preço adicionado ao buffer circular
+     */
+    private Instant last;
+
+    /**
+     * Instante em que o SMMA foi iniciado (primeiro registro com o período completo, calculado como SMA). Os registros
+     * seguintes são suavizados a partir do valor anterior
+     */
+    private Instant seed;
+
     public IndicatorMovingAverage(int period, METHOD method) {
         this(period, method, AppliedPrice.CLOSE);
     }
@@ -36,6 +73,7 @@ public class IndicatorMovingAverage extends Indicator {
         this.method = method;
         this.appliedPrice = appliedPrice;
         this.output = this.getBuffer(0);
+        this.window = new double[method == METHOD.EMA ? 0 : Math.max(1, period)];
     }
 
     @Override
@@ -43,6 +81,23 @@ public class IndicatorMovingAverage extends Indicator {
         return 1;
     }
 
+    @Override
+    protected boolean rollback(Instant instant) {
+        // O buffer circular é preenchido novamente no próximo cálculo
+        final Instant seeded = seed;
+        clear();
+        if (seeded != null && seeded.isBefore(instant)) {
+            // Os valores anteriores ao instante já foram suavizados
+            seed = seeded;
+        }
+        return true;
+    }
+
+    @Override
+    protected void onRelease() {
+        clear();
+    }
+
     @Override
     protected void calculate(Instant instant) {
         switch (method) {
@@ -84,15 +139,75 @@ public class IndicatorMovingAverage extends Indicator {
      * @param instant
      */
     private void sma(Instant instant) {
-        // Soma dos preços no periodo
-        final DoubleAdder sum = new DoubleAdder();
+        slide(instant);
+        output.value(instant, sum / count);
+    }
+
+    /**
+     * Adiciona o preço do instante ao buffer circular
+     *
+     * @param instant
+     * @return O preço do instante
+     */
+    private double slide(Instant instant) {
+        final double price = appliedPrice.apply(timeSeries.one(instant));
+
+        if (instant.equals(last)) {
+            // O registro mais recente foi substituído, apenas o último preço é trocado
+            final int newest = (next + window.length - 1) % window.length;
+            sum += price - window[newest];
+            weighted += count * (price - window[newest]);
+            window[newest] = price;
+        } else {
+            if (last == null && !calculated.isEmpty()) {
+                // Após a reversão, preenche o buffer com os preços anteriores ao instante
+                final List<Rate> previous = timeSeries.list(calculated.get(calculated.size() - 1), window.length - 1);
+                for (int i = previous.size() - 1; i >= 0; i--) {
+                    push(appliedPrice.apply(previous.get(i)));
+                }
+            }
+            push(price);
+            last = instant;
+        }
+        return price;
+    }
 
-        // initial accumulation
-        timeSeries.list(instant, period).stream().forEach(ohlc -> {
-            sum.add(appliedPrice.apply(ohlc));
-        });
+    /**
+     * Adiciona um preço ao buffer circular, descartando o preço mais antigo do período
+     *
+     * @param price
+     */
+    private void push(double price) {
+        if (count == window.length) {
+            // Todos os pesos diminuem em 1, o preço mais antigo (peso 1) é descartado
+            weighted -= sum;
+            sum -= window[next];
+        } else {
+            count++;
+        }
+        window[next] = price;
+        sum += price;
+        weighted += count * price;
+        next = (next + 1) % window.length;
 
-        output.value(instant, sum.doubleValue() / Math.min(period, timeSeries.size()));
+        if (next == 0) {
+            // A cada volta completa, refaz as somas para evitar o acúmulo de erros de arredondamento
+            sum = 0;
+            weighted = 0;
+            for (int i = 0; i < count; i++) {
+                sum += window[i];
+                weighted += (i + 1) * window[i];
+            }
+        }
+    }
+
+    private void clear() {
+        next = 0;
+        count = 0;
+        sum = 0;
+        weighted = 0;
+        last = null;
+        seed = null;
     }
 
     /**
@@ -122,7 +237,7 @@ public class IndicatorMovingAverage extends Indicator {
     private void ema(Instant instant) {
         double exponent = 2.0 / (period + 1);
 
-        final double price = appliedPrice.apply(timeSeries.last());
+        final double price = appliedPrice.apply(timeSeries.one(instant));
 
         if (calculated.isEmpty()) {
             // Primeiro registro (mais antigo), o EMA nao possui valores
@@ -131,7 +246,7 @@ public class IndicatorMovingAverage extends Indicator {
         } else {
 
             Instant prevInstant = calculated.get(calculated.size() - 1);
-            double emaPrev = output.value(prevInstant);
+            double emaPrev = output.doubleValue(prevInstant);
             double emaActual = price * exponent + emaPrev * (1 - exponent);
             output.value(instant, emaActual);
         }
@@ -139,20 +254,64 @@ public class IndicatorMovingAverage extends Indicator {
 
     /**
      * Smoothed Moving Average
+     * <p>
+     *
+     * O primeiro valor é calculado como o SMA do período, os valores seguintes são suavizados a partir do valor
+     * anterior:
+     *
+     * <p>
+     * <code>SMMA (i) = (SMMA (i - 1) * (N - 1) + FECHAMENTO (i)) / N</code>
+     * <p>
+     * Onde:
+     * <p>
+     * <code>SMMA (i - 1)</code> – valor da smoothed moving average do período anterior;
+     * <p>
+     * <code>FECHAMENTO(i)</code> – preço de fechamento (Ou {@link AppliedPrice AppliedPrice} informado) do período
+     * atual;
+     * <p>
+     * <code>N</code> – número de períodos de cálculo.
      *
      * @param instant
      */
     private void smma(Instant instant) {
+        final double price = slide(instant);
+
+        if (seed == null && count == window.length) {
+            seed = instant;
+        }
 
+        if (seed == null || seed.equals(instant)) {
+            // Ainda não existem registros suficientes, média simples dos registros disponíveis
+            output.value(instant, sum / count);
+        } else {
+            final double smmaPrev = output.doubleValue(calculated.get(calculated.size() - 1));
+            output.value(instant, (smmaPrev * (window.length - 1) + price) / window.length);
+        }
     }
 
     /**
      * Linear Weighted Moving Average
+     * <p>
+     *
+     * O preço mais recente possui o peso N, o anterior N - 1 e assim por diante, até o peso 1:
+     *
+     * <p>
+     * <code>LWMA = SUM (FECHAMENTO (i) * i, N) / SUM (i, N)</code>
+     * <p>
+     * Onde:
+     * <p>
+     * <code>SUM</code> – soma;
+     * <p>
+     * <code>FECHAMENTO(i)</code> – preço de fechamento (Ou {@link AppliedPrice AppliedPrice} informado) do período
+     * atual;
+     * <p>
+     * <code>N</code> – número de períodos de cálculo.
      *
      * @param instant
      */
     private void lwma(Instant instant) {
-
+        slide(instant);
+        output.value(instant, weighted / (count * (count + 1) / 2.0));
     }
 
     /**
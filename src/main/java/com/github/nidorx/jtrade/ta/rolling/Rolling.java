@@ -0,0 +1,102 @@
+package com.github.nidorx.jtrade.ta.rolling;
+
+import com.github.nidorx.jtrade.core.Rate;
+import com.github.nidorx.jtrade.core.TimeSeriesRate;
+import com.github.nidorx.jtrade.util.function.Cancelable;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Estatística sobre uma janela móvel dos últimos N valores, atualizada em O(1) amortizado.
+ *
+ * A janela é formada pelos valores confirmados mais o valor mais recente (pendente), que pode ser substituído enquanto o
+ * candle está em formação sem recalcular a janela: {@link #add(double) add} confirma o valor pendente e inicia um novo,
+ * {@link #update(double) update} apenas substitui o valor pendente.
+ *
+ * <p>
+ * Pode ser associada a um {@link TimeSeriesRate} ou a um
+ * {@link com.github.nidorx.jtrade.ta.indicator.IndicatorBuffer IndicatorBuffer}, sendo atualizada automaticamente a cada
+ * novo valor.
+ *
+ * @author Alex Rodin <contato@alexrodin.info>
+ */
+public abstract class Rolling {
+
+    /**
+     * Quantidade de valores da janela
+     */
+    protected final int period;
+
+    /**
+     * Quantidade de valores atualmente na janela (confirmados + pendente)
+     */
+    protected int count;
+
+    public Rolling(int period) {
+        if (period < 1) {
+            throw new IllegalArgumentException("Period must be greater than zero");
+        }
+        this.period = period;
+    }
+
+    public int getPeriod() {
+        return period;
+    }
+
+    /**
+     * Quantidade de valores na janela
+     *
+     * @return
+     */
+    public int count() {
+        return count;
+    }
+
+    /**
+     * Verifica se a janela já possui {@link #period} valores
+     *
+     * @return
+     */
+    public boolean isReady() {
+        return count == period;
+    }
+
+    /**
+     * Descarta todos os valores
+     */
+    public abstract void reset();
+
+    /**
+     * Associa a estatística ao TimeSeries: os novos candles são adicionados, a substituição do candle mais recente
+     * atualiza o valor pendente e a adição de candles antigos reconstrói a janela a partir dos últimos candles
+     *
+     * @param ts
+     * @param add
+     * @param update
+     * @return Permite desassociar a estatística do TimeSeries
+     */
+    protected final Cancelable attach(TimeSeriesRate ts, Consumer<Rate> add, Consumer<Rate> update) {
+        return ts.onUpdate(changes -> {
+            if (changes.oldValuesAdded) {
+                reset();
+                addAll(ts.list(period), add);
+            } else if (changes.lastUpdated) {
+                update.accept(ts.last());
+            } else if (changes.count > 0) {
+                addAll(ts.list(changes.newest, changes.oldest), add);
+            }
+        });
+    }
+
+    /**
+     * Adiciona os candles do mais antigo para o mais recente
+     *
+     * @param rates Os candles, do mais recente para o mais antigo
+     * @param add
+     */
+    private static void addAll(List<Rate> rates, Consumer<Rate> add) {
+        for (int i = rates.size() - 1; i >= 0; i--) {
+            add.accept(rates.get(i));
+        }
+    }
+}
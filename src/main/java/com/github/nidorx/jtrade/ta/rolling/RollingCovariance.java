@@ -0,0 +1,161 @@
+package com.github.nidorx.jtrade.ta.rolling;
+
+import com.github.nidorx.jtrade.core.AppliedPrice;
+import com.github.nidorx.jtrade.core.TimeSeriesRate;
+import com.github.nidorx.jtrade.util.function.Cancelable;
+
+/**
+ * Covariância e correlação dos últimos N pares de valores, em O(1) por par
+ *
+ * @author Alex Rodin <contato@alexrodin.info>
+ */
+public class RollingCovariance extends Rolling {
+
+    /**
+     * Os pares confirmados (os últimos period - 1 pares), para remoção
+     */
+    private final double[] xs;
+
+    private final double[] ys;
+
+    private int next;
+
+    private int n;
+
+    private double meanX;
+
+    private double meanY;
+
+    /**
+     * Soma dos produtos das diferenças dos pares confirmados
+     */
+    private double c;
+
+    private double pendingX;
+
+    private double pendingY;
+
+    private final RollingVariance x;
+
+    private final RollingVariance y;
+
+    public RollingCovariance(int period) {
+        super(period);
+        this.xs = new double[Math.max(1, period - 1)];
+        this.ys = new double[xs.length];
+        this.x = new RollingVariance(period);
+        this.y = new RollingVariance(period);
+    }
+
+    /**
+     * Confirma o par pendente e adiciona um novo par pendente
+     *
+     * @param x
+     * @param y
+     */
+    public void add(double x, double y) {
+        if (count > 0 && period > 1) {
+            commit(pendingX, pendingY);
+        }
+        pendingX = x;
+        pendingY = y;
+        count = Math.min(period, count + 1);
+        this.x.add(x);
+        this.y.add(y);
+    }
+
+    /**
+     * Substitui o par pendente (o mais recente)
+     *
+     * @param x
+     * @param y
+     */
+    public void update(double x, double y) {
+        if (count == 0) {
+            add(x, y);
+            return;
+        }
+        pendingX = x;
+        pendingY = y;
+        this.x.update(x);
+        this.y.update(y);
+    }
+
+    /**
+     * Covariância populacional
+     *
+     * @return
+     */
+    public double covariance() {
+        if (count == 0) {
+            return Double.NaN;
+        }
+        final double dx = pendingX - meanX;
+        final double meanYWith = meanY + (pendingY - meanY) / (n + 1);
+        return (c + dx * (pendingY - meanYWith)) / (n + 1);
+    }
+
+    /**
+     * Coeficiente de correlação de Pearson
+     *
+     * @return O valor, ou NaN se algum dos desvios padrão for zero
+     */
+    public double correlation() {
+        final double sx = x.stdev();
+        final double sy = y.stdev();
+        return sx > 0 && sy > 0 ? covariance() / (sx * sy) : Double.NaN;
+    }
+
+    /**
+     * Associa a covariância aos dois preços informados do TimeSeries
+     *
+     * @param ts
+     * @param x
+     * @param y
+     * @return
+     */
+    public Cancelable attach(TimeSeriesRate ts, AppliedPrice x, AppliedPrice y) {
+        return attach(ts, rate -> add(x.apply(rate), y.apply(rate)), rate -> update(x.apply(rate), y.apply(rate)));
+    }
+
+    @Override
+    public void reset() {
+        count = 0;
+        n = 0;
+        next = 0;
+        meanX = 0;
+        meanY = 0;
+        c = 0;
+        x.reset();
+        y.reset();
+    }
+
+    private void commit(double vx, double vy) {
+        if (n == xs.length) {
+            // Remove o par mais antigo
+            final double rx = xs[next];
+            final double ry = ys[next];
+            if (n == 1) {
+                n = 0;
+                meanX = 0;
+                meanY = 0;
+                c = 0;
+            } else {
+                final double previousX = (meanX * n - rx) / (n - 1);
+                c -= (rx - previousX) * (ry - meanY);
+                meanY = (meanY * n - ry) / (n - 1);
+                meanX = previousX;
+                n--;
+            }
+        }
+
+        xs[next] = vx;
+        ys[next] = vy;
+        next = (next + 1) % xs.length;
+        n++;
+        final double dx = vx - meanX;
+        meanX += dx / n;
+        meanY += (vy - meanY) / n;
+        c += dx * (vy - meanY);
+    }
+}
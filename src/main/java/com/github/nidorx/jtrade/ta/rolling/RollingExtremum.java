@@ -0,0 +1,108 @@
+package com.github.nidorx.jtrade.ta.rolling;
+
+/**
+ * Maior ou menor valor de uma janela móvel, por meio de uma fila monotônica dos valores confirmados: cada valor entra e
+ * sai da fila uma única vez, O(1) amortizado por valor
+ *
+ * @author Alex Rodin <contato@alexrodin.info>
+ */
+abstract class RollingExtremum extends RollingValue {
+
+    /**
+     * Fila circular dos candidatos (valor e sequência), do mais antigo para o mais recente
+     */
+    private final double[] values;
+
+    private final long[] sequences;
+
+    private int front;
+
+    private int size;
+
+    /**
+     * Sequência do próximo valor confirmado
+     */
+    private long sequence;
+
+    private double pending;
+
+    RollingExtremum(int period) {
+        super(period);
+        this.values = new double[Math.max(1, period - 1)];
+        this.sequences = new long[values.length];
+    }
+
+    /**
+     * Verifica se o valor <code>a</code> substitui o candidato <code>b</code>
+     *
+     * @param a
+     * @param b
+     * @return
+     */
+    abstract boolean dominates(double a, double b);
+
+    @Override
+    public void add(double value) {
+        if (count > 0 && period > 1) {
+            commit(pending);
+        }
+        pending = value;
+        count = Math.min(period, count + 1);
+    }
+
+    @Override
+    public void update(double value) {
+        if (count == 0) {
+            add(value);
+        } else {
+            pending = value;
+        }
+    }
+
+    @Override
+    public double value() {
+        if (count == 0) {
+            return Double.NaN;
+        }
+        if (size == 0) {
+            return pending;
+        }
+        final double candidate = values[front];
+        return dominates(pending, candidate) ? pending : candidate;
+    }
+
+    @Override
+    public void reset() {
+        count = 0;
+        size = 0;
+        front = 0;
+        sequence = 0;
+    }
+
+    /**
+     * Adiciona um valor à janela dos valores confirmados (os últimos period - 1 valores)
+     *
+     * @param value
+     */
+    private void commit(double value) {
+        // Remove os candidatos fora da janela
+        final long oldest = sequence - (period - 1) + 1;
+        while (size > 0 && sequences[front] < oldest) {
+            front = (front + 1) % values.length;
+            size--;
+        }
+
+        // Remove os candidatos superados pelo novo valor
+        while (size > 0 && !dominates(values[index(size - 1)], value)) {
+            size--;
+        }
+
+        final int i = index(size++);
+        values[i] = value;
+        sequences[i] = sequence++;
+    }
+
+    private int index(int offset) {
+        return (front + offset) % values.length;
+    }
+}
@@ -0,0 +1,18 @@
+package com.github.nidorx.jtrade.ta.rolling;
+
+/**
+ * Maior valor dos últimos N valores
+ *
+ * @author Alex Rodin <contato@alexrodin.info>
+ */
+public class RollingMax extends RollingExtremum {
+
+    public RollingMax(int period) {
+        super(period);
+    }
+
+    @Override
+    boolean dominates(double a, double b) {
+        return a > b;
+    }
+}
@@ -0,0 +1,73 @@
+package com.github.nidorx.jtrade.ta.rolling;
+
+import com.github.nidorx.jtrade.core.AppliedPrice;
+import com.github.nidorx.jtrade.core.TimeSeriesRate;
+import com.github.nidorx.jtrade.ta.indicator.IndicatorBuffer;
+import com.github.nidorx.jtrade.util.function.Cancelable;
+import java.time.Instant;
+
+/**
+ * Estatística de uma janela móvel de uma única série de valores
+ *
+ * @author Alex Rodin <contato@alexrodin.info>
+ */
+public abstract class RollingValue extends Rolling {
+
+    public RollingValue(int period) {
+        super(period);
+    }
+
+    /**
+     * Confirma o valor pendente e adiciona um novo valor pendente
+     *
+     * @param value
+     */
+    public abstract void add(double value);
+
+    /**
+     * Substitui o valor pendente (o mais recente), adicionando-o se a janela estiver vazia
+     *
+     * @param value
+     */
+    public abstract void update(double value);
+
+    /**
+     * O valor da estatística sobre a janela atual
+     *
+     * @return O valor, ou NaN se a janela estiver vazia
+     */
+    public abstract double value();
+
+    /**
+     * Associa a estatística ao preço informado do TimeSeries
+     *
+     * @param ts
+     * @param price
+     * @return
+     */
+    public Cancelable attach(TimeSeriesRate ts, AppliedPrice price) {
+        return attach(ts, rate -> add(price.apply(rate)), rate -> update(price.apply(rate)));
+    }
+
+    /**
+     * Associa a estatística aos valores do buffer: um valor em um instante mais recente é adicionado, um novo valor no
+     * instante mais recente substitui o valor pendente e os valores anteriores são ignorados
+     *
+     * @param buffer
+     * @return
+     */
+    public Cancelable attach(IndicatorBuffer buffer) {
+        final Instant[] last = new Instant[1];
+        return buffer.onValue((instant, value) -> {
+            if (value == null || (last[0] != null && instant.isBefore(last[0]))) {
+                return;
+            }
+            if (instant.equals(last[0])) {
+                update(value);
+            } else {
+                add(value);
+                last[0] = instant;
+            }
+        });
+    }
+}
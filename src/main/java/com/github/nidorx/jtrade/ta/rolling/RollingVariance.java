@@ -0,0 +1,149 @@
+package com.github.nidorx.jtrade.ta.rolling;
+
+/**
+ * Média, variância e desvio padrão dos últimos N valores, pelo algoritmo de Welford com remoção do valor mais antigo,
+ * em O(1) por valor
+ *
+ * @author Alex Rodin <contato@alexrodin.info>
+ */
+public class RollingVariance extends RollingValue {
+
+    /**
+     * Os valores confirmados (os últimos period - 1 valores), para remoção
+     */
+    private final double[] window;
+
+    private int next;
+
+    /**
+     * Quantidade, média e soma dos quadrados das diferenças dos valores confirmados
+     */
+    private int n;
+
+    private double mean;
+
+    private double m2;
+
+    private double pending;
+
+    public RollingVariance(int period) {
+        super(period);
+        this.window = new double[Math.max(1, period - 1)];
+    }
+
+    @Override
+    public void add(double value) {
+        if (count > 0 && period > 1) {
+            commit(pending);
+        }
+        pending = value;
+        count = Math.min(period, count + 1);
+    }
+
+    @Override
+    public void update(double value) {
+        if (count == 0) {
+            add(value);
+        } else {
+            pending = value;
+        }
+    }
+
+    /**
+     * O desvio padrão (populacional)
+     *
+     * @return
+     */
+    @Override
+    public double value() {
+        return stdev();
+    }
+
+    public double mean() {
+        if (count == 0) {
+            return Double.NaN;
+        }
+        return mean + (pending - mean) / (n + 1);
+    }
+
+    /**
+     * Variância populacional
+     *
+     * @return
+     */
+    public double variance() {
+        if (count == 0) {
+            return Double.NaN;
+        }
+        return Math.max(0, moment() / (n + 1));
+    }
+
+    /**
+     * Variância amostral
+     *
+     * @return O valor, ou NaN se a janela possuir menos de 2 valores
+     */
+    public double sampleVariance() {
+        if (count < 2) {
+            return Double.NaN;
+        }
+        return Math.max(0, moment() / n);
+    }
+
+    public double stdev() {
+        return Math.sqrt(variance());
+    }
+
+    /**
+     * Quantidade de desvios padrão entre o valor mais recente e a média
+     *
+     * @return O valor, ou NaN se o desvio padrão for zero
+     */
+    public double zScore() {
+        final double stdev = stdev();
+        return stdev > 0 ? (pending - mean()) / stdev : Double.NaN;
+    }
+
+    @Override
+    public void reset() {
+        count = 0;
+        n = 0;
+        next = 0;
+        mean = 0;
+        m2 = 0;
+    }
+
+    /**
+     * A soma dos quadrados das diferenças, incluindo o valor pendente
+     *
+     * @return
+     */
+    private double moment() {
+        final double delta = pending - mean;
+        return m2 + delta * (pending - (mean + delta / (n + 1)));
+    }
+
+    private void commit(double value) {
+        if (n == window.length) {
+            // Remove o valor mais antigo
+            final double removed = window[next];
+            if (n == 1) {
+                n = 0;
+                mean = 0;
+                m2 = 0;
+            } else {
+                final double previous = (mean * n - removed) / (n - 1);
+                m2 -= (removed - previous) * (removed - mean);
+                mean = previous;
+                n--;
+            }
+        }
+
+        window[next] = value;
+        next = (next + 1) % window.length;
+        n++;
+        final double delta = value - mean;
+        mean += delta / n;
+        m2 += delta * (value - mean);
+    }
+}
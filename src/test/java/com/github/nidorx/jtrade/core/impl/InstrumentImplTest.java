@@ -0,0 +1,119 @@
+package com.github.nidorx.jtrade.core.impl;
+
+import com.github.nidorx.jtrade.core.Rate;
+import com.github.nidorx.jtrade.core.TimeFrame;
+import com.github.nidorx.jtrade.core.TimeSeriesRate;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Alex Rodin <contato@alexrodin.info>
+ */
+public class InstrumentImplTest {
+
+    /**
+     * 2018-01-02T00:00:00Z
+     */
+    private static final Instant DAY = Instant.ofEpochSecond(1514851200);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Rate rate(int minute, double close) {
+        return new Rate("EURUSD", DAY.plusSeconds(minute * 60), close, close + 1, close - 1, close, 1, 0, 2, TimeFrame.M1);
+    }
+
+    @Test
+    public void testDerivedTimeframeIsCreatedOnDemand() {
+        final InstrumentImpl instrument = new InstrumentImpl("EURUSD", "EUR", "USD");
+        instrument.setDeriveTimeframes(true);
+
+        // 2 horas e 30 minutos de candles M1
+        for (int minute = 0; minute < 150; minute++) {
+            instrument.processRate(rate(minute, minute));
+        }
+
+        final TimeSeriesRate h1 = instrument.timeSeries(TimeFrame.H1);
+        assertSame(h1, instrument.timeSeries(TimeFrame.H1));
+        assertEquals(3, h1.size());
+
+        final Rate first = h1.first();
+        assertEquals(DAY, first.time);
+        assertEquals(0.0, first.open, 0.0);
+        assertEquals(60.0, first.high, 0.0);
+        assertEquals(-1.0, first.low, 0.0);
+        assertEquals(59.0, first.close, 0.0);
+        assertEquals(60, first.volumeTick);
+        assertEquals(TimeFrame.H1, first.timeframe);
+
+        // O candle em formação
+        assertEquals(149.0, h1.last().close, 0.0);
+        assertEquals(30, h1.last().volumeTick);
+    }
+
+    @Test
+    public void testDerivedTimeframeFollowsBaseSeries() {
+        final InstrumentImpl instrument = new InstrumentImpl("EURUSD", "EUR", "USD");
+        instrument.setDeriveTimeframes(true);
+        for (int minute = 0; minute < 90; minute++) {
+            instrument.processRate(rate(minute, minute));
+        }
+
+        final TimeSeriesRate h1 = instrument.timeSeries(TimeFrame.H1);
+        assertEquals(2, h1.size());
+        assertEquals(30, h1.last().volumeTick);
+
+        // Candle M1 em formação substituído
+        instrument.processRate(rate(89, 500));
+        assertEquals(2, h1.size());
+        assertEquals(500.0, h1.last().close, 0.0);
+        assertEquals(501.0, h1.last().high, 0.0);
+        assertEquals(30, h1.last().volumeTick);
+
+        for (int minute = 90; minute < 130; minute++) {
+            instrument.processRate(rate(minute, minute));
+        }
+        assertEquals(3, h1.size());
+        assertEquals(119.0, h1.list(1, 1).get(0).close, 0.0);
+        assertEquals(501.0, h1.list(1, 1).get(0).high, 0.0);
+        assertEquals(60, h1.list(1, 1).get(0).volumeTick);
+        assertEquals(129.0, h1.last().close, 0.0);
+        assertEquals(10, h1.last().volumeTick);
+    }
+
+    @Test
+    public void testDerivedTimeframeIsNotPersisted() throws Exception {
+        final Path directory = folder.getRoot().toPath();
+        final InstrumentImpl instrument = new InstrumentImpl("EURUSD", "EUR", "USD");
+        instrument.setDeriveTimeframes(true);
+        instrument.persistTo(directory, "test");
+        for (int minute = 0; minute < 90; minute++) {
+            instrument.processRate(rate(minute, minute));
+        }
+
+        // Candle H1 informado pelo Broker, o TimeSeries derivado é construído a partir do M1
+        instrument.processRate(new Rate("EURUSD", DAY, 7, 7, 7, 7, 1, 0, 0, TimeFrame.H1));
+        assertEquals(59.0, instrument.timeSeries(TimeFrame.H1).first().close, 0.0);
+        instrument.closeFiles();
+
+        assertTrue(Files.exists(directory.resolve("test_EURUSD_M1")));
+        assertFalse(Files.exists(directory.resolve("test_EURUSD_H1")));
+
+        // Após o reinício, o TimeSeries derivado é reconstruído a partir dos candles M1 salvos
+        final InstrumentImpl restarted = new InstrumentImpl("EURUSD", "EUR", "USD");
+        restarted.setDeriveTimeframes(true);
+        restarted.persistTo(directory, "test");
+        assertEquals(90, restarted.timeSeries(TimeFrame.M1).size());
+        final TimeSeriesRate h1 = restarted.timeSeries(TimeFrame.H1);
+        assertEquals(2, h1.size());
+        assertEquals(59.0, h1.first().close, 0.0);
+        assertEquals(89.0, h1.last().close, 0.0);
+        restarted.closeFiles();
+    }
+}
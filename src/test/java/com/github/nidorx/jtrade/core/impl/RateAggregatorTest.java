@@ -0,0 +1,62 @@
+package com.github.nidorx.jtrade.core.impl;
+
+import com.github.nidorx.jtrade.core.Rate;
+import com.github.nidorx.jtrade.core.TimeFrame;
+import java.time.Instant;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Alex Rodin <contato@alexrodin.info>
+ */
+public class RateAggregatorTest {
+
+    /**
+     * 2018-01-02T00:57:00Z
+     */
+    private static final long NOW = 1514854620000L;
+
+    @Test
+    public void testBuildsBarFromTicks() {
+        final RateAggregator m1 = new RateAggregator("EURUSD", TimeFrame.M1, 0.00001);
+
+        assertNull(m1.process(NOW + 1000, 1.20000, 1.20010, 1));
+        assertNull(m1.process(NOW + 2000, 1.20050, 1.20055, 2));
+        assertNull(m1.process(NOW + 3000, 1.19990, 1.20010, 0));
+        assertNull(m1.process(NOW + 59999, 1.20020, 1.20030, 0));
+
+        final Rate forming = m1.current();
+        assertEquals(Instant.ofEpochMilli(NOW), forming.time);
+        assertEquals(4, forming.volumeTick);
+
+        final Rate closed = m1.process(NOW + 60000, 1.30000, 1.30010, 0);
+        assertEquals(Instant.ofEpochMilli(NOW), closed.time);
+        assertEquals(1.20000, closed.open, 0.0);
+        assertEquals(1.20050, closed.high, 0.0);
+        assertEquals(1.19990, closed.low, 0.0);
+        assertEquals(1.20020, closed.close, 0.0);
+        assertEquals(4, closed.volumeTick);
+        assertEquals(3, closed.volumeReal);
+        assertEquals(5, closed.spread);
+        assertEquals(TimeFrame.M1, closed.timeframe);
+
+        assertEquals(Instant.ofEpochMilli(NOW + 60000), m1.current().time);
+        assertEquals(1.3, m1.current().open, 0.0);
+    }
+
+    @Test
+    public void testWeekAndMonthBuckets() {
+        final RateAggregator w1 = new RateAggregator("EURUSD", TimeFrame.W1, 0.00001);
+        final RateAggregator mn1 = new RateAggregator("EURUSD", TimeFrame.MN1, 0.00001);
+        w1.process(NOW, 1, 1, 0);
+        mn1.process(NOW, 1, 1, 0);
+
+        // Domingo, 2017-12-31 e 2018-01-01
+        assertEquals(Instant.parse("2017-12-31T00:00:00Z"), w1.current().time);
+        assertEquals(Instant.parse("2018-01-01T00:00:00Z"), mn1.current().time);
+
+        assertNull(mn1.process(Instant.parse("2018-01-31T23:59:59Z").toEpochMilli(), 1, 1, 0));
+        assertNotNull(mn1.process(Instant.parse("2018-02-01T00:00:00Z").toEpochMilli(), 1, 1, 0));
+    }
+}
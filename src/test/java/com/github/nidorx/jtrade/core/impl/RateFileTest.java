@@ -0,0 +1,83 @@
+package com.github.nidorx.jtrade.core.impl;
+
+import com.github.nidorx.jtrade.core.Rate;
+import com.github.nidorx.jtrade.core.TimeFrame;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Alex Rodin <contato@alexrodin.info>
+ */
+public class RateFileTest {
+
+    private static final Instant NOW = Instant.ofEpochSecond(1514854620);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Rate rate(int minute, double close) {
+        return new Rate("EURUSD", NOW.plusSeconds(minute * 60), close - 1, close + 1, close - 2, close, 3, 4, 5, TimeFrame.M1);
+    }
+
+    @Test
+    public void testAppendAndReopen() throws Exception {
+        final Path path = folder.getRoot().toPath().resolve("test_EURUSD_M1");
+
+        try (RateFile file = RateFile.open(path, "EURUSD", TimeFrame.M1, 2)) {
+            // Cresce além da reserva inicial
+            for (int minute = 0; minute < 5000; minute++) {
+                assertTrue(file.append(rate(minute, minute)));
+            }
+            // Atualização do último candle e candle antigo
+            assertTrue(file.append(rate(4999, 10)));
+            assertFalse(file.append(rate(10, 10)));
+        }
+
+        try (RateFile file = RateFile.open(path, "EURUSD", TimeFrame.M1)) {
+            assertEquals(5000, file.size());
+
+            final List<Rate> rates = file.read();
+            assertEquals(NOW, rates.get(0).time);
+            assertEquals(10.0, rates.get(4999).close, 0.0);
+            assertEquals(11.0, rates.get(4999).high, 0.0);
+            assertEquals(5, rates.get(4999).spread);
+            assertEquals(TimeFrame.M1, rates.get(4999).timeframe);
+
+            file.append(rate(5000, 5000));
+        }
+
+        try (RateFile file = RateFile.open(path, "EURUSD", TimeFrame.M1)) {
+            assertEquals(5001, file.size());
+            assertEquals(5000.0, file.read().get(5000).close, 0.0);
+        }
+    }
+
+    @Test
+    public void testRejectsUnknownVersion() throws Exception {
+        final Path path = folder.getRoot().toPath().resolve("test_EURUSD_M1");
+        try (RateFile file = RateFile.open(path, "EURUSD", TimeFrame.M1)) {
+            file.append(rate(0, 1));
+        }
+
+        // Versão posterior do formato
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(4).putInt(0, 2), 4);
+        }
+
+        try (RateFile file = RateFile.open(path, "EURUSD", TimeFrame.M1)) {
+            fail("Unknown version must be rejected");
+        } catch (IOException ex) {
+            assertTrue(ex.getMessage().contains("version"));
+        }
+    }
+}
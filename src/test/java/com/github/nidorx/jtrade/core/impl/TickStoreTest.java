@@ -0,0 +1,54 @@
+package com.github.nidorx.jtrade.core.impl;
+
+import com.github.nidorx.jtrade.core.Tick;
+import java.time.Instant;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Alex Rodin <contato@alexrodin.info>
+ */
+public class TickStoreTest {
+
+    private static final long NOW = 1537429422098L;
+
+    @Test
+    public void testTicksInSameMillisecondArePreserved() {
+        final TickStore store = new TickStore("EURUSD");
+        assertTrue(store.add(NOW, 1.0, 1.1, 0, 1));
+        assertTrue(store.add(NOW + 1, 2.0, 2.1, 0, 1));
+        assertTrue(store.add(NOW + 1, 3.0, 3.1, 0, 1));
+        assertTrue(store.add(NOW + 2, 4.0, 4.1, 0, 1));
+        assertFalse(store.add(NOW, 5.0, 5.1, 0, 1));
+
+        assertEquals(4, store.size());
+
+        final List<Tick> ticks = store.list(Instant.ofEpochMilli(NOW + 1), Instant.ofEpochMilli(NOW + 1));
+        assertEquals(2, ticks.size());
+        // Do mais recente para o mais antigo
+        assertEquals(3.0, ticks.get(0).bid, 0.0);
+        assertEquals(2.0, ticks.get(1).bid, 0.0);
+        assertEquals("EURUSD", ticks.get(0).symbol);
+
+        assertEquals(3, store.list(Instant.ofEpochMilli(NOW + 1)).size());
+        assertEquals(4.0, store.list().get(0).bid, 0.0);
+    }
+
+    @Test
+    public void testRetentionAcrossChunks() {
+        final TickStore store = new TickStore("EURUSD");
+        store.setRetention(RetentionPolicy.ofCount(5000));
+        for (int i = 0; i < 100000; i++) {
+            store.add(NOW + i, i, i, 0, 1);
+        }
+
+        assertEquals(5000, store.size());
+        final List<Tick> ticks = store.list();
+        assertEquals(99999.0, ticks.get(0).bid, 0.0);
+        assertEquals(95000.0, ticks.get(4999).bid, 0.0);
+        assertEquals(11, store.list(Instant.ofEpochMilli(NOW + 96010), Instant.ofEpochMilli(NOW + 96000)).size());
+        assertTrue(store.list(Instant.ofEpochMilli(NOW + 100), null).isEmpty());
+    }
+}
@@ -0,0 +1,576 @@
+package com.github.nidorx.jtrade.core.impl;
+
+import com.github.nidorx.jtrade.core.AppliedPrice;
+import com.github.nidorx.jtrade.core.Rate;
+import com.github.nidorx.jtrade.core.TimeFrame;
+import com.github.nidorx.jtrade.core.TimeSeriesRate;
+import com.github.nidorx.jtrade.core.TimeSeriesUpdate;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Alex Rodin <contato@alexrodin.info>
+ */
+public class TimeSeriesRateImplTest {
+
+    private static final Instant NOW = Instant.ofEpochSecond(1514854620);
+
+    private static Rate rate(int minute, double close) {
+        return new Rate("EURUSD", NOW.plusSeconds(minute * 60), close - 1, close + 1, close - 2, close, 1, 0, 0, TimeFrame.M1);
+    }
+
+    private static double price(double value, boolean points) {
+        return points ? Math.round(value * 100000) / 100000.0 : value + 1e-9;
+    }
+
+    /**
+     * Adiciona os mesmos valores, fora de ordem, nos dois modos de armazenamento
+     *
+     * @param storage
+     * @return
+     */
+    private static TimeSeriesRateImpl fill(TimeSeriesRateImpl.STORAGE storage) {
+        final TimeSeriesRateImpl ts = new TimeSeriesRateImpl(storage);
+        for (int minute : new int[]{5, 6, 7, 2, 3, 9, 8, 0, 1, 4}) {
+            ts.add(rate(minute, minute));
+        }
+        return ts;
+    }
+
+    @Test
+    public void testOutOfOrderInsertsKeepReverseIndexing() {
+        for (TimeSeriesRateImpl.STORAGE storage : TimeSeriesRateImpl.STORAGE.values()) {
+            final TimeSeriesRateImpl ts = new TimeSeriesRateImpl(storage);
+            final List<Integer> minutes = new ArrayList<>();
+            for (int minute = 0; minute < 300; minute++) {
+                minutes.add(minute);
+            }
+            Collections.shuffle(minutes, new Random(3));
+
+            // Mais recente primeiro, assim como os índices do TimeSeries
+            final TreeSet<Integer> expected = new TreeSet<>(Collections.reverseOrder());
+            for (int minute : minutes) {
+                ts.add(rate(minute, minute));
+                // Registros repetidos são ignorados
+                ts.add(rate(minute, -1));
+                expected.add(minute);
+                if (expected.size() % 25 == 0) {
+                    assertReverseIndexing(ts, new ArrayList<>(expected));
+                }
+            }
+        }
+    }
+
+    /**
+     * Compara as consultas por índice com a ordenação esperada (índice 0 = registro mais recente)
+     *
+     * @param ts
+     * @param expected Os minutos dos registros, do mais recente para o mais antigo
+     */
+    private static void assertReverseIndexing(TimeSeriesRateImpl ts, List<Integer> expected) {
+        assertEquals(expected.size(), ts.size());
+        final List<Rate> rates = ts.list(0, ts.size());
+        final List<Instant> times = ts.time(0, ts.size());
+        for (int i = 0; i < expected.size(); i++) {
+            final Instant instant = NOW.plusSeconds(expected.get(i) * 60);
+            assertEquals(instant, rates.get(i).time);
+            assertEquals(instant, times.get(i));
+            assertEquals(i, ts.indexOf(instant));
+            assertEquals(expected.get(i), ts.one(instant).close, 0.0);
+        }
+        assertEquals(-1, ts.indexOf(NOW.plusSeconds(expected.get(0) * 60 + 30)));
+
+        // Janelas a partir de uma posição
+        final int start = expected.size() / 3;
+        final List<Rate> window = ts.list(start, 5);
+        final List<Instant> windowTimes = ts.time(start, 5);
+        assertEquals(5, window.size());
+        for (int i = 0; i < window.size(); i++) {
+            assertEquals(NOW.plusSeconds(expected.get(start + i) * 60), window.get(i).time);
+            assertEquals(window.get(i).time, windowTimes.get(i));
+        }
+        assertEquals(expected.get(0), ts.last().close, 0.0);
+        assertEquals(expected.get(expected.size() - 1), ts.first().close, 0.0);
+    }
+
+    @Test
+    public void testColumnarMatchesObjectStorage() {
+        final TimeSeriesRateImpl object = fill(TimeSeriesRateImpl.STORAGE.OBJECT);
+        final TimeSeriesRateImpl columnar = fill(TimeSeriesRateImpl.STORAGE.COLUMNAR);
+
+        assertEquals(10, columnar.size());
+        assertEquals(object.size(), columnar.size());
+        assertEquals(9.0, columnar.last().close, 0.0);
+        assertEquals(0.0, columnar.first().close, 0.0);
+
+        assertArrayEquals(object.close(4), columnar.close(4), 0.0);
+        assertArrayEquals(object.open(2, 5), columnar.open(2, 5), 0.0);
+        assertArrayEquals(object.high(NOW.plusSeconds(300), 3), columnar.high(NOW.plusSeconds(300), 3), 0.0);
+        assertArrayEquals(object.low(NOW.plusSeconds(420), NOW.plusSeconds(120)),
+                columnar.low(NOW.plusSeconds(420), NOW.plusSeconds(120)), 0.0);
+        assertArrayEquals(new double[]{9, 8, 7}, columnar.close(3), 0.0);
+
+        final List<Rate> rates = columnar.list(3, 2);
+        assertEquals(2, rates.size());
+        assertEquals(NOW.plusSeconds(6 * 60), rates.get(0).time);
+        assertEquals(5.0, rates.get(1).close, 0.0);
+    }
+
+    @Test
+    public void testForEachVisitsFromNewest() {
+        for (TimeSeriesRateImpl.STORAGE storage : TimeSeriesRateImpl.STORAGE.values()) {
+            final TimeSeriesRateImpl ts = fill(storage);
+            final double[] close = new double[4];
+            final long[] time = new long[4];
+            final int visited = ts.forEach(7, 5, (index, t, o, h, l, c, v) -> {
+                close[index - 7] = c;
+                time[index - 7] = t;
+            });
+
+            assertEquals(3, visited);
+            assertArrayEquals(new double[]{2, 1, 0, 0}, close, 0.0);
+            assertEquals(NOW.plusSeconds(120).getEpochSecond(), time[0]);
+            assertEquals(0, ts.forEach(10, 1, (index, t, o, h, l, c, v) -> fail()));
+        }
+    }
+
+    @Test
+    public void testTimeIsOrderedFromNewest() {
+        final TimeSeriesRateImpl ts = fill(TimeSeriesRateImpl.STORAGE.COLUMNAR);
+        final long now = NOW.getEpochSecond();
+
+        assertArrayEquals(new long[]{now + 540, now + 480, now + 420}, ts.timeSeconds(3));
+        assertArrayEquals(new long[]{(now + 180) * 1000, (now + 120) * 1000}, ts.timeMillis(6, 2));
+        assertEquals(8, ts.timeSeconds(NOW.plusSeconds(120)).length);
+        assertEquals(now + 120, ts.timeSeconds(NOW.plusSeconds(120))[7]);
+        assertArrayEquals(new long[]{now + 420, now + 360}, ts.timeSeconds(NOW.plusSeconds(450), NOW.plusSeconds(330)));
+        assertEquals(0, ts.timeSeconds(10, 1).length);
+        assertEquals(Arrays.asList(NOW.plusSeconds(60), NOW), ts.time(8, 5));
+    }
+
+    @Test
+    public void testCompressedMatchesColumnarStorage() {
+        final TimeSeriesRateImpl columnar = new TimeSeriesRateImpl(TimeSeriesRateImpl.STORAGE.COLUMNAR, RetentionPolicy.ofCount(3000));
+        final TimeSeriesRateImpl compressed = new TimeSeriesRateImpl(TimeSeriesRateImpl.STORAGE.COMPRESSED, RetentionPolicy.ofCount(3000), true);
+
+        // Preços com 5 casas decimais e lacunas no tempo, em lotes e registro a registro
+        final List<Rate> rates = new ArrayList<>();
+        double price = 1.2;
+        for (int minute = 0; minute < 4000; minute++) {
+            price = Math.round((price + Math.sin(minute) * 0.0003) * 100000) / 100000.0;
+            // Metade dos blocos com preços em pontos, metade com preços arbitrários (XOR)
+            final boolean points = minute < 2000;
+            rates.add(new Rate("EURUSD", NOW.plusSeconds((minute + minute / 700 * 120) * 60L), price,
+                    price(price + 0.0002, points), price(price - 0.0001, points), price(price + 0.00005, points),
+                    minute % 37, minute, minute % 3, TimeFrame.M1));
+        }
+        final List<Rate> odd = new ArrayList<>();
+        for (int i = 0; i < rates.size(); i++) {
+            if (i % 2 == 0) {
+                columnar.add(rates.get(i));
+                compressed.add(rates.get(i));
+            } else {
+                odd.add(rates.get(i));
+            }
+        }
+        final TimeSeriesRate snapshot = compressed.snapshot();
+
+        // Registros antigos intercalados
+        columnar.add(odd);
+        compressed.add(odd);
+        final Rate last = rates.get(rates.size() - 1);
+        final Rate replaced = new Rate(last.symbol, last.time, 2, 3, 1, 2.5, 99, 99, 1, TimeFrame.M1);
+        columnar.update(replaced);
+        compressed.update(replaced);
+
+        assertEquals(3000, compressed.size());
+        assertArrayEquals(columnar.close(3000), compressed.close(3000), 0.0);
+        assertArrayEquals(columnar.high(1500, 700), compressed.high(1500, 700), 0.0);
+        assertArrayEquals(columnar.low(3000), compressed.low(3000), 0.0);
+        assertArrayEquals(columnar.timeSeconds(3000), compressed.timeSeconds(3000));
+        for (int index : new int[]{0, 1, 511, 512, 1234, 2999}) {
+            final Rate expected = columnar.list(index, 1).get(0);
+            final Rate actual = compressed.list(index, 1).get(0);
+            assertEquals(expected.time, actual.time);
+            assertEquals(expected.open, actual.open, 0.0);
+            assertEquals(expected.low, actual.low, 0.0);
+            assertEquals(expected.volumeTick, actual.volumeTick);
+            assertEquals(expected.volumeReal, actual.volumeReal);
+            assertEquals(expected.spread, actual.spread);
+        }
+        assertEquals(2.5, compressed.last().close, 0.0);
+        assertTrue(compressed.bytesPerItem() < columnar.bytesPerItem());
+
+        // O snapshot mantém o estado anterior
+        assertEquals(2000, snapshot.size());
+        assertEquals(rates.get(3998).close, snapshot.last().close, 0.0);
+    }
+
+    @Test
+    public void testCompressedForEachReusesDecodeArea() {
+        final TimeSeriesRateImpl compressed = new TimeSeriesRateImpl(TimeSeriesRateImpl.STORAGE.COMPRESSED);
+        final TimeSeriesRateImpl columnar = new TimeSeriesRateImpl(TimeSeriesRateImpl.STORAGE.COLUMNAR);
+        final Random random = new Random(5);
+        for (int minute = 0; minute < 3000; minute++) {
+            final Rate rate = rate(minute, Math.round(random.nextDouble() * 1e5) / 1e5);
+            compressed.add(rate);
+            columnar.add(rate);
+        }
+
+        // Leituras consecutivas reutilizam a área de decodificação, inclusive entre blocos diferentes
+        for (int start : new int[]{2999, 1500, 10, 700, 0}) {
+            assertArrayEquals(columnar.close(start, 600), compressed.close(start, 600), 0.0);
+            assertArrayEquals(columnar.high(start, 600), compressed.high(start, 600), 0.0);
+        }
+
+        // O visitante consulta o mesmo TimeSeries durante a iteração
+        final double[] expected = columnar.close(0, 3000);
+        final int[] visited = {0};
+        compressed.forEach(0, 3000, (index, time, open, high, low, close, volume) -> {
+            assertEquals(expected[index], close, 0.0);
+            if (index % 499 == 0) {
+                assertArrayEquals(columnar.low(index, 700), compressed.low(index, 700), 0.0);
+            }
+            visited[0]++;
+        });
+        assertEquals(3000, visited[0]);
+    }
+
+    @Test
+    public void testOffHeapMatchesColumnarStorage() {
+        final TimeSeriesRateImpl columnar = fill(TimeSeriesRateImpl.STORAGE.COLUMNAR);
+        final TimeSeriesRateImpl offHeap = new TimeSeriesRateImpl(TimeSeriesRateImpl.STORAGE.OFF_HEAP, RetentionPolicy.ofCount(200), true);
+        for (int minute : new int[]{5, 6, 7, 2, 3, 9, 8, 0, 1, 4}) {
+            offHeap.add(rate(minute, minute));
+        }
+        final TimeSeriesRate snapshot = offHeap.snapshot();
+        offHeap.update(rate(9, 42));
+
+        assertEquals(10, offHeap.size());
+        assertArrayEquals(columnar.open(2, 5), offHeap.open(2, 5), 0.0);
+        assertArrayEquals(columnar.low(1, 9), offHeap.low(1, 9), 0.0);
+        assertEquals(42.0, offHeap.last().close, 0.0);
+        assertEquals(9.0, snapshot.last().close, 0.0);
+        assertArrayEquals(new double[]{9, 8, 7}, snapshot.close(3), 0.0);
+
+        for (int minute = 10; minute < 500; minute++) {
+            offHeap.add(rate(minute, minute));
+        }
+        assertEquals(200, offHeap.size());
+        assertEquals(300.0, offHeap.first().close, 0.0);
+
+        offHeap.release();
+        assertEquals(0, offHeap.size());
+        assertEquals(10, snapshot.size());
+    }
+
+    @Test
+    public void testOffHeapReusesEvictedSpace() {
+        // Fora do modo concorrente, o espaço dos registros descartados é reaproveitado no próprio buffer
+        final TimeSeriesRateImpl offHeap = new TimeSeriesRateImpl(TimeSeriesRateImpl.STORAGE.OFF_HEAP,
+                RetentionPolicy.ofCount(40));
+        TimeSeriesRate snapshot = null;
+        for (int minute = 0; minute < 5000; minute++) {
+            offHeap.add(rate(minute, minute));
+            if (minute % 7 == 0) {
+                offHeap.update(rate(minute, minute + 0.5));
+            }
+            if (minute == 1000) {
+                snapshot = offHeap.snapshot();
+            }
+        }
+
+        assertEquals(40, offHeap.size());
+        assertEquals(4960.0, offHeap.first().close, 0.0);
+        assertEquals(4999.0, offHeap.last().close, 0.0);
+        assertArrayEquals(new double[]{4999, 4998.5, 4997, 4996}, offHeap.close(4), 0.0);
+        final List<Instant> times = offHeap.time(offHeap.size());
+        for (int i = 0; i < times.size(); i++) {
+            assertEquals(NOW.plusSeconds((4999 - i) * 60), times.get(i));
+        }
+
+        // Sobrescrever o próprio buffer não altera o snapshot
+        assertEquals(40, snapshot.size());
+        assertEquals(1000.0, snapshot.last().close, 0.0);
+        assertEquals(961.0, snapshot.first().close, 0.0);
+    }
+
+    @Test
+    public void testRangeQueriesMatchScan() {
+        for (TimeSeriesRateImpl.STORAGE storage : TimeSeriesRateImpl.STORAGE.values()) {
+            final TimeSeriesRateImpl ts = new TimeSeriesRateImpl(storage, RetentionPolicy.ofCount(1000));
+            final Random random = new Random(7);
+            for (int minute = 0; minute < 1500; minute++) {
+                ts.add(rate(minute, random.nextInt(500)));
+                if (minute % 97 == 0) {
+                    ts.update(rate(minute, random.nextInt(500)));
+                }
+                if (minute % 101 == 0) {
+                    check(ts, random);
+                }
+            }
+            // Registros antigos reconstroem o índice
+            final Instant old = NOW.plusSeconds(700 * 60 + 30);
+            ts.add(new Rate("EURUSD", old, 0, 10000, -10000, 0, 1, 0, 0, TimeFrame.M1));
+            assertEquals(ts.indexOf(old), ts.iHighest(AppliedPrice.HIGH, 0, ts.size()));
+            assertEquals(ts.indexOf(old), ts.iLowest(AppliedPrice.LOW, 0, ts.size()));
+            check(ts, random);
+        }
+    }
+
+    @Test
+    public void testGenerationIsPublishedWithState() {
+        final TimeSeriesRateImpl ts = new TimeSeriesRateImpl(TimeSeriesRateImpl.STORAGE.COLUMNAR,
+                RetentionPolicy.UNLIMITED, true);
+        for (int minute = 10; minute < 300; minute++) {
+            ts.add(rate(minute, minute));
+        }
+        assertEquals(10.0, ts.lowest(AppliedPrice.CLOSE, 0, ts.size()), 0.0);
+
+        // Registros no final e a substituição do mais recente mantêm as posições
+        final int generation = ts.state().generation;
+        ts.add(rate(300, 300));
+        ts.update(rate(300, 301));
+        assertEquals(generation, ts.state().generation);
+
+        // Registros antigos mudam as posições, o estado publicado já carrega a nova geração
+        ts.add(rate(5, -5));
+        assertEquals(generation + 1, ts.state().generation);
+        assertEquals(-5.0, ts.lowest(AppliedPrice.CLOSE, 0, ts.size()), 0.0);
+        assertEquals(ts.size() - 1, ts.iLowest(AppliedPrice.CLOSE, 0, ts.size()));
+
+        ts.add(Arrays.asList(rate(0, -10), rate(1, -9)));
+        assertEquals(generation + 2, ts.state().generation);
+        assertEquals(ts.size() - 1, ts.iLowest(AppliedPrice.CLOSE, 0, ts.size()));
+
+        ts.reset(Arrays.asList(rate(0, 1), rate(1, 2)));
+        assertEquals(generation + 3, ts.state().generation);
+        assertEquals(3.0, ts.sum(AppliedPrice.CLOSE, 0, 2), 0.0);
+    }
+
+    private static void check(TimeSeriesRateImpl ts, Random random) {
+        for (int i = 0; i < 20; i++) {
+            final int start = random.nextInt(ts.size());
+            final int count = 1 + random.nextInt(ts.size());
+            final double[] high = ts.high(start, count);
+            final double[] low = ts.low(start, count);
+
+            int iHighest = 0;
+            int iLowest = 0;
+            double sum = 0;
+            for (int j = 0; j < high.length; j++) {
+                iHighest = high[j] > high[iHighest] ? j : iHighest;
+                iLowest = low[j] < low[iLowest] ? j : iLowest;
+                sum += high[j];
+            }
+            assertEquals(start + iHighest, ts.iHighest(AppliedPrice.HIGH, start, count));
+            assertEquals(start + iLowest, ts.iLowest(AppliedPrice.LOW, start, count));
+            assertEquals(high[iHighest], ts.highest(AppliedPrice.HIGH, start, count), 0.0);
+            assertEquals(low[iLowest], ts.lowest(AppliedPrice.LOW, start, count), 0.0);
+            assertEquals(sum, ts.sum(AppliedPrice.HIGH, start, count), 1e-6);
+            assertEquals(sum / high.length, ts.mean(AppliedPrice.HIGH, start, count), 1e-9);
+        }
+        assertEquals(-1, ts.iHighest(AppliedPrice.HIGH, ts.size(), 1));
+        assertTrue(Double.isNaN(ts.lowest(AppliedPrice.LOW, 0, 0)));
+    }
+
+    @Test
+    public void testParallelStreamKeepsOrder() {
+        final TimeSeriesRateImpl ts = new TimeSeriesRateImpl(TimeSeriesRateImpl.STORAGE.COLUMNAR);
+        final List<Rate> rates = new ArrayList<>();
+        for (int minute = 0; minute < 10000; minute++) {
+            rates.add(rate(minute, minute));
+        }
+        ts.add(rates);
+
+        final Spliterator<Map.Entry<Instant, Rate>> spliterator = ts.spliterator();
+        assertTrue(spliterator.hasCharacteristics(Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.ORDERED));
+
+        // Apenas as visões imutáveis e o modo concorrente não modificam os arrays publicados
+        assertFalse(spliterator.hasCharacteristics(Spliterator.IMMUTABLE));
+        assertTrue(ts.snapshot().spliterator().hasCharacteristics(Spliterator.IMMUTABLE));
+        assertTrue(new TimeSeriesRateImpl(TimeSeriesRateImpl.STORAGE.COLUMNAR, RetentionPolicy.UNLIMITED, true)
+                .spliterator().hasCharacteristics(Spliterator.IMMUTABLE));
+        final Spliterator<Map.Entry<Instant, Rate>> prefix = spliterator.trySplit();
+        assertEquals(5000, prefix.estimateSize());
+        assertEquals(5000, spliterator.estimateSize());
+
+        final List<Double> closes = ts.stream().parallel().map(e -> e.getValue().close).collect(Collectors.toList());
+        assertEquals(10000, closes.size());
+        assertEquals(9999.0, closes.get(0), 0.0);
+        assertEquals(0.0, closes.get(9999), 0.0);
+        assertEquals(5000, ts.stream().parallel().filter(e -> e.getValue().close % 2 == 0).count());
+    }
+
+    @Test
+    public void testDuplicatedInstantIsIgnored() {
+        final TimeSeriesRateImpl ts = new TimeSeriesRateImpl(TimeSeriesRateImpl.STORAGE.COLUMNAR);
+        ts.add(rate(0, 1));
+        ts.add(rate(0, 2));
+        assertEquals(1, ts.size());
+        assertEquals(1.0, ts.last().close, 0.0);
+    }
+
+    @Test
+    public void testBarShift() {
+        final TimeSeriesRateImpl ts = fill(TimeSeriesRateImpl.STORAGE.COLUMNAR);
+
+        assertEquals(0, ts.indexOf(NOW.plusSeconds(9 * 60)));
+        assertEquals(9, ts.indexOf(NOW));
+        assertEquals(-1, ts.indexOf(NOW.plusSeconds(90)));
+
+        // Dentro do candle de 1 minuto
+        assertEquals(8, ts.barShift(NOW.plusSeconds(90), false));
+        assertEquals(-1, ts.barShift(NOW.plusSeconds(90), true));
+        assertEquals(-1, ts.barShift(NOW.minusSeconds(60), false));
+        assertEquals(0, ts.barShift(NOW.plusSeconds(3600), false));
+    }
+
+    @Test
+    public void testBatchAddNotifiesOnce() {
+        final TimeSeriesRateImpl ts = new TimeSeriesRateImpl(TimeSeriesRateImpl.STORAGE.COLUMNAR);
+        ts.add(Arrays.asList(rate(4, 4), rate(6, 6)));
+
+        final List<TimeSeriesUpdate> updates = new ArrayList<>();
+        ts.onUpdate(updates::add);
+        updates.clear();
+
+        ts.add(Arrays.asList(rate(9, 9), rate(0, 0), rate(5, 5), rate(4, 40), rate(8, 8), rate(0, 10)));
+
+        assertEquals(1, updates.size());
+        assertTrue(updates.get(0).oldValuesAdded);
+        assertEquals(4, updates.get(0).count);
+        assertEquals(NOW, updates.get(0).oldest);
+        assertEquals(NOW.plusSeconds(9 * 60), updates.get(0).newest);
+
+        assertEquals(6, ts.size());
+        assertArrayEquals(new double[]{9, 8, 6, 5, 4, 0}, ts.close(ts.size()), 0.0);
+
+        // Preenchimento de uma lacuna, apenas os registros a partir do instante foram alterados
+        updates.clear();
+        ts.add(rate(7, 7));
+        assertTrue(updates.get(0).oldValuesAdded);
+        assertEquals(NOW.plusSeconds(7 * 60), updates.get(0).changedSince);
+
+        updates.clear();
+        ts.add(Arrays.asList(rate(3, 3), rate(1, 1)));
+        assertEquals(NOW.plusSeconds(60), updates.get(0).changedSince);
+    }
+
+    @Test
+    public void testRetentionEvictsOldest() {
+        final TimeSeriesRateImpl ts = new TimeSeriesRateImpl(TimeSeriesRateImpl.STORAGE.COLUMNAR, RetentionPolicy.ofCount(100));
+        for (int minute = 0; minute < 1000; minute++) {
+            ts.add(rate(minute, minute));
+        }
+
+        assertEquals(100, ts.size());
+        assertEquals(900.0, ts.first().close, 0.0);
+        assertEquals(999.0, ts.last().close, 0.0);
+        assertEquals(-1, ts.indexOf(NOW.plusSeconds(899 * 60)));
+        assertArrayEquals(new double[]{999, 998}, ts.close(2), 0.0);
+
+        ts.setRetention(RetentionPolicy.ofAge(Duration.ofMinutes(10)));
+        assertEquals(11, ts.size());
+        assertEquals(989.0, ts.first().close, 0.0);
+    }
+
+    @Test
+    public void testSnapshotIsNotAffectedByWriter() {
+        final TimeSeriesRateImpl ts = new TimeSeriesRateImpl(TimeSeriesRateImpl.STORAGE.COLUMNAR, RetentionPolicy.ofCount(5), true);
+        for (int minute = 2; minute < 6; minute++) {
+            ts.add(rate(minute, minute));
+        }
+
+        final long version = ts.version();
+        final TimeSeriesRate snapshot = ts.snapshot();
+
+        // Inserção fora de ordem, no final e descarte pela política de retenção
+        ts.add(rate(0, 0));
+        ts.add(Arrays.asList(rate(1, 1), rate(6, 6), rate(7, 7)));
+
+        assertEquals(version + 2, ts.version());
+        assertArrayEquals(new double[]{7, 6, 5, 4, 3}, ts.close(5), 0.0);
+
+        assertEquals(version, snapshot.version());
+        assertEquals(4, snapshot.size());
+        assertEquals(5.0, snapshot.last().close, 0.0);
+        assertArrayEquals(new double[]{5, 4, 3, 2}, snapshot.close(10), 0.0);
+        assertEquals(3, snapshot.indexOf(NOW.plusSeconds(120)));
+    }
+
+    @Test
+    public void testSnapshotOfNonConcurrentSeries() {
+        for (TimeSeriesRateImpl.STORAGE storage : TimeSeriesRateImpl.STORAGE.values()) {
+            final TimeSeriesRateImpl ts = new TimeSeriesRateImpl(storage, RetentionPolicy.ofCount(600));
+            for (int minute = 0; minute < 1000; minute += 2) {
+                ts.add(rate(minute, minute));
+            }
+
+            final TimeSeriesRate snapshot = ts.snapshot();
+            final double[] close = ts.close(ts.size());
+            final Rate last = ts.last();
+
+            // Preenchimento das lacunas, substituição do mais recente e descarte pela política de retenção
+            for (int minute = 1; minute < 1000; minute += 2) {
+                ts.add(rate(minute, minute));
+            }
+            ts.update(rate(1999, -1));
+            ts.update(rate(1999, -2));
+            for (int minute = 1000; minute < 3000; minute++) {
+                ts.add(rate(minute, minute + 0.5));
+            }
+
+            assertEquals(600, ts.size());
+            assertEquals(500, snapshot.size());
+            assertArrayEquals(storage.name(), close, snapshot.close(snapshot.size()), 0.0);
+            assertEquals(last.close, snapshot.last().close, 0.0);
+            assertEquals(0.0, snapshot.first().close, 0.0);
+            assertEquals(NOW.plusSeconds(998 * 60), snapshot.time(1).get(0));
+            assertEquals(249, snapshot.indexOf(NOW.plusSeconds(500 * 60)));
+            assertEquals(500, snapshot.stream().count());
+        }
+    }
+
+    @Test
+    public void testUpdateReplacesNewest() {
+        final TimeSeriesRateImpl ts = new TimeSeriesRateImpl(TimeSeriesRateImpl.STORAGE.COLUMNAR, RetentionPolicy.UNLIMITED, true);
+        ts.add(rate(0, 0));
+        ts.add(rate(1, 1));
+
+        final List<TimeSeriesUpdate> updates = new ArrayList<>();
+        ts.onUpdate(updates::add);
+        updates.clear();
+
+        final TimeSeriesRate snapshot = ts.snapshot();
+        ts.update(rate(1, 10));
+
+        assertEquals(1, updates.size());
+        assertTrue(updates.get(0).lastUpdated);
+        assertFalse(updates.get(0).oldValuesAdded);
+        assertEquals(2, ts.size());
+        assertArrayEquals(new double[]{10, 0}, ts.close(2), 0.0);
+        assertEquals(11.0, ts.last().high, 0.0);
+
+        // O estado anterior não é afetado pela substituição
+        assertArrayEquals(new double[]{1, 0}, snapshot.close(2), 0.0);
+        assertEquals(1.0, snapshot.last().close, 0.0);
+
+        // Novo instante, inclusão normal
+        ts.update(rate(2, 2));
+        assertEquals(3, ts.size());
+        assertFalse(updates.get(1).lastUpdated);
+    }
+}
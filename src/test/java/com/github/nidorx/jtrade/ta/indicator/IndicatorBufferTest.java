@@ -0,0 +1,92 @@
+package com.github.nidorx.jtrade.ta.indicator;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Alex Rodin <contato@alexrodin.info>
+ */
+public class IndicatorBufferTest {
+
+    private static final Instant NOW = Instant.ofEpochSecond(1514854620);
+
+    private static Instant minute(int minute) {
+        return NOW.plusSeconds(minute * 60);
+    }
+
+    @Test
+    public void testValuesAndColors() {
+        final IndicatorBuffer buffer = new IndicatorBuffer();
+        for (int i = 0; i < 1000; i++) {
+            if (i % 10 != 5) {
+                buffer.value(minute(i), (double) i);
+            }
+        }
+        // Instantes antigos, fora de ordem
+        for (int i = 995; i >= 0; i -= 10) {
+            buffer.value(minute(i), (double) i);
+        }
+        buffer.color(minute(3), 7);
+        buffer.value(minute(3), 30.0);
+        buffer.value(minute(4), Double.NaN);
+
+        assertEquals(1000, buffer.size());
+        assertEquals(30.0, buffer.value(minute(3)), 0.0);
+        assertEquals(Integer.valueOf(7), buffer.color(minute(3)));
+        assertNull(buffer.color(minute(2)));
+        assertNull(buffer.value(minute(4)));
+        assertNull(buffer.value(minute(1000)));
+        assertTrue(Double.isNaN(buffer.doubleValue(minute(-1))));
+        assertEquals(995.0, buffer.doubleValue(minute(995)), 0.0);
+
+        buffer.removeBefore(minute(2));
+        buffer.removeFrom(minute(10));
+        final List<Instant> instants = new ArrayList<>();
+        final List<Double> values = new ArrayList<>();
+        buffer.forEachOutput((instant, output) -> {
+            instants.add(instant);
+            values.add(output.value);
+        });
+
+        // O minuto 4 não possui valor nem cor
+        assertEquals(7, instants.size());
+        assertEquals(minute(2), instants.get(0));
+        assertEquals(minute(9), instants.get(6));
+        assertEquals(30.0, values.get(1), 0.0);
+        assertEquals(5.0, values.get(2), 0.0);
+
+        // O espaço das posições descartadas é reaproveitado
+        for (int i = 10; i < 2000; i++) {
+            buffer.value(minute(i), (double) i);
+        }
+        assertEquals(1998, buffer.size());
+        assertEquals(1999.0, buffer.value(minute(1999)), 0.0);
+        assertEquals(2.0, buffer.value(minute(2)), 0.0);
+    }
+
+    @Test
+    public void testShiftedReads() {
+        final IndicatorBuffer buffer = new IndicatorBuffer();
+        for (int i = 0; i < 100; i++) {
+            buffer.value(minute(i), (double) i);
+        }
+        buffer.removeFrom(minute(50));
+
+        final double[] dst = new double[4];
+        assertEquals(4, buffer.values(0, 4, dst));
+        assertArrayEquals(new double[]{49, 48, 47, 46}, dst, 0.0);
+        assertEquals(2, buffer.values(48, 4, dst));
+        assertArrayEquals(new double[]{1, 0}, new double[]{dst[0], dst[1]}, 0.0);
+
+        // Posições fora do buffer não leem as posições descartadas
+        assertEquals(0, buffer.values(-1, 4, dst));
+        assertEquals(0, buffer.values(-60, 4, dst));
+        assertEquals(0, buffer.values(50, 4, dst));
+        assertTrue(Double.isNaN(buffer.value(-1)));
+        assertTrue(Double.isNaN(buffer.value(50)));
+    }
+}
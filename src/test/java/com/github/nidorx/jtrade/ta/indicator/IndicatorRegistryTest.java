@@ -0,0 +1,59 @@
+package com.github.nidorx.jtrade.ta.indicator;
+
+import com.github.nidorx.jtrade.core.AppliedPrice;
+import com.github.nidorx.jtrade.core.Rate;
+import com.github.nidorx.jtrade.core.TimeFrame;
+import com.github.nidorx.jtrade.core.impl.TimeSeriesRateImpl;
+import com.github.nidorx.jtrade.ta.indicator.impl.IndicatorMovingAverage;
+import java.time.Instant;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Alex Rodin <contato@alexrodin.info>
+ */
+public class IndicatorRegistryTest {
+
+    private static final Instant NOW = Instant.ofEpochSecond(1514854620);
+
+    private static Rate rate(int minute, double close) {
+        return new Rate("EURUSD", NOW.plusSeconds(minute * 60), close, close, close, close, 1, 0, 0, TimeFrame.M1);
+    }
+
+    @Test
+    public void testSharesIdenticalIndicators() {
+        final IndicatorRegistry registry = new IndicatorRegistry();
+        final TimeSeriesRateImpl ts = new TimeSeriesRateImpl();
+        final TimeSeriesRateImpl other = new TimeSeriesRateImpl();
+
+        final IndicatorMovingAverage a = registry.movingAverage(ts, 3, IndicatorMovingAverage.METHOD.SMA, AppliedPrice.CLOSE);
+        final IndicatorMovingAverage b = registry.movingAverage(ts, 3, IndicatorMovingAverage.METHOD.SMA, AppliedPrice.CLOSE);
+        assertSame(a, b);
+        assertEquals(2, registry.references(a));
+
+        // Parâmetros ou TimeSeries diferentes
+        assertNotSame(a, registry.movingAverage(ts, 4, IndicatorMovingAverage.METHOD.SMA, AppliedPrice.CLOSE));
+        assertNotSame(a, registry.movingAverage(ts, 3, IndicatorMovingAverage.METHOD.SMA, AppliedPrice.OPEN));
+        assertNotSame(a, registry.movingAverage(other, 3, IndicatorMovingAverage.METHOD.SMA, AppliedPrice.CLOSE));
+        assertEquals(4, registry.size());
+
+        ts.add(rate(0, 1));
+        ts.add(rate(1, 2));
+        assertEquals(1.5, a.value(0, 0), 0.0);
+
+        // A primeira liberação mantém o indicador associado ao TimeSeries
+        assertFalse(registry.release(a));
+        ts.add(rate(2, 3));
+        assertEquals(2.0, b.value(0, 0), 0.0);
+
+        assertTrue(registry.release(b));
+        assertEquals(0, registry.references(a));
+        assertEquals(3, registry.size());
+
+        // Após a última liberação, uma nova instância é criada
+        final IndicatorMovingAverage c = registry.movingAverage(ts, 3, IndicatorMovingAverage.METHOD.SMA, AppliedPrice.CLOSE);
+        assertNotSame(a, c);
+        assertEquals(2.0, c.value(0, 0), 0.0);
+    }
+}
@@ -0,0 +1,223 @@
+package com.github.nidorx.jtrade.ta.indicator;
+
+import com.github.nidorx.jtrade.core.Rate;
+import com.github.nidorx.jtrade.core.TimeFrame;
+import com.github.nidorx.jtrade.core.impl.RetentionPolicy;
+import com.github.nidorx.jtrade.core.impl.TimeSeriesRateImpl;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Alex Rodin <contato@alexrodin.info>
+ */
+public class IndicatorTest {
+
+    private static final Instant NOW = Instant.ofEpochSecond(1514854620);
+
+    private static Rate rate(int minute, double close) {
+        return new Rate("EURUSD", NOW.plusSeconds(minute * 60), close, close, close, close, 1, 0, 0, TimeFrame.M1);
+    }
+
+    /**
+     * Soma acumulada dos preços de fechamento, registra os instantes calculados
+     */
+    private static class Cumulative extends Indicator {
+
+        final List<Instant> calls = new ArrayList<>();
+
+        boolean reversible = true;
+
+        @Override
+        public int getQtdBuffers() {
+            return 1;
+        }
+
+        @Override
+        protected boolean rollback(Instant instant) {
+            return reversible;
+        }
+
+        @Override
+        protected void calculate(Instant instant) {
+            calls.add(instant);
+            final IndicatorBuffer output = getBuffer(0);
+            final Double prev = calculated.isEmpty() ? null : output.value(calculated.get(calculated.size() - 1));
+            output.value(instant, (prev == null ? 0 : prev) + timeSeries.one(instant).close);
+        }
+    }
+
+    @Test
+    public void testBackfillRecalculatesOnlySuffix() {
+        final TimeSeriesRateImpl ts = new TimeSeriesRateImpl();
+        ts.add(Arrays.asList(rate(0, 1), rate(1, 2), rate(2, 3), rate(4, 5), rate(5, 6)));
+
+        final Cumulative indicator = new Cumulative();
+        indicator.appendTo(ts);
+        indicator.getOutput();
+        assertEquals(5, indicator.calls.size());
+
+        // Preenche a lacuna do minuto 3
+        indicator.calls.clear();
+        ts.add(rate(3, 4));
+        final Map<Instant, IndicatorOutput> output = indicator.getOutput().get(0);
+
+        assertEquals(Arrays.asList(NOW.plusSeconds(180), NOW.plusSeconds(240), NOW.plusSeconds(300)),
+                indicator.calls);
+        assertEquals(6, output.size());
+        assertEquals(6.0, output.get(NOW.plusSeconds(120)).value, 0.0);
+        assertEquals(10.0, output.get(NOW.plusSeconds(180)).value, 0.0);
+        assertEquals(21.0, output.get(NOW.plusSeconds(300)).value, 0.0);
+
+        // O indicador não suporta a reversão, recalcula todos os valores
+        indicator.reversible = false;
+        indicator.calls.clear();
+        ts.add(rate(-1, 0));
+        assertEquals(21.0, indicator.getOutput().get(0).get(NOW.plusSeconds(300)).value, 0.0);
+        assertEquals(7, indicator.calls.size());
+    }
+
+    @Test
+    public void testReplacedBarIsRecalculatedAfterNewBar() {
+        final TimeSeriesRateImpl ts = new TimeSeriesRateImpl();
+        ts.add(Arrays.asList(rate(0, 1), rate(1, 2)));
+
+        final Cumulative indicator = new Cumulative();
+        indicator.appendTo(ts);
+        assertEquals(3.0, indicator.value(0, 0), 0.0);
+
+        // Candle em formação substituído, novo candle e nova substituição, sem leituras intermediárias
+        ts.update(rate(1, 10));
+        ts.add(rate(2, 3));
+        ts.update(rate(2, 4));
+
+        final Map<Instant, IndicatorOutput> output = indicator.getOutput().get(0);
+        assertEquals(11.0, output.get(NOW.plusSeconds(60)).value, 0.0);
+        assertEquals(15.0, output.get(NOW.plusSeconds(120)).value, 0.0);
+    }
+
+    @Test
+    public void testRetentionDropsOldestValues() {
+        final TimeSeriesRateImpl ts = new TimeSeriesRateImpl(TimeSeriesRateImpl.STORAGE.COLUMNAR,
+                RetentionPolicy.ofCount(10));
+        final Cumulative indicator = new Cumulative();
+        indicator.appendTo(ts);
+
+        double sum = 0;
+        for (int minute = 0; minute < 1000; minute++) {
+            ts.add(rate(minute, minute));
+            sum += minute;
+            assertEquals(sum, indicator.value(0, 0), 0.0);
+        }
+
+        assertEquals(10, indicator.calculated.size());
+        assertEquals(NOW.plusSeconds(990 * 60), indicator.calculated.get(0));
+        assertEquals(NOW.plusSeconds(999 * 60), indicator.calculated.get(9));
+        assertEquals(10, indicator.getOutput().get(0).size());
+        assertEquals(1000, indicator.calls.size());
+    }
+
+    @Test
+    public void testOutputViews() {
+        final TimeSeriesRateImpl ts = new TimeSeriesRateImpl();
+        ts.add(Arrays.asList(rate(0, 1), rate(1, 2), rate(2, 3)));
+
+        final Cumulative indicator = new Cumulative();
+        indicator.appendTo(ts);
+        assertEquals(6.0, indicator.value(0, 0), 0.0);
+        assertEquals(1.0, indicator.value(0, 2), 0.0);
+        assertTrue(Double.isNaN(indicator.value(0, 3)));
+
+        // Sem alterações no TimeSeries, não recalcula
+        indicator.calls.clear();
+        assertEquals(3.0, indicator.value(0, 1), 0.0);
+        assertTrue(indicator.calls.isEmpty());
+
+        ts.add(rate(3, 4));
+        final double[] dst = new double[5];
+        assertEquals(3, indicator.values(0, 1, 5, dst));
+        assertArrayEquals(new double[]{6, 3, 1, 0, 0}, dst, 0.0);
+        assertEquals(1, indicator.calls.size());
+
+        final IndicatorBuffer.Cursor cursor = indicator.cursor(0);
+        final Map<Instant, IndicatorOutput> output = indicator.getOutput().get(0);
+        int count = 0;
+        Instant oldest = null;
+        while (cursor.next()) {
+            assertEquals(count++, cursor.shift());
+            assertEquals(output.get(cursor.instant()).value, cursor.value(), 0.0);
+            oldest = cursor.instant();
+        }
+        assertEquals(4, count);
+        assertEquals(NOW, oldest);
+    }
+
+    @Test
+    public void testSharedAcrossThreads() throws InterruptedException {
+        final TimeSeriesRateImpl ts = new TimeSeriesRateImpl(TimeSeriesRateImpl.STORAGE.COLUMNAR,
+                RetentionPolicy.UNLIMITED, true);
+        final Cumulative indicator = new Cumulative();
+        indicator.appendTo(ts);
+
+        final int bars = 5000;
+        final AtomicBoolean done = new AtomicBoolean(false);
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        final CountDownLatch start = new CountDownLatch(1);
+
+        final List<Thread> readers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            final Thread reader = new Thread(() -> {
+                try {
+                    start.await();
+                    double last = 0;
+                    while (!done.get()) {
+                        // A soma acumulada nunca diminui
+                        final double value = indicator.value(0, 0);
+                        if (!Double.isNaN(value)) {
+                            assertTrue(value >= last);
+                            last = value;
+                        }
+                    }
+                } catch (Throwable ex) {
+                    error.compareAndSet(null, ex);
+                }
+            });
+            reader.start();
+            readers.add(reader);
+        }
+
+        final Thread writer = new Thread(() -> {
+            try {
+                start.await();
+                for (int minute = 0; minute < bars; minute++) {
+                    ts.add(rate(minute, 1));
+                }
+            } catch (Throwable ex) {
+                error.compareAndSet(null, ex);
+            } finally {
+                done.set(true);
+            }
+        });
+        writer.start();
+        start.countDown();
+
+        writer.join();
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        assertNull(error.get());
+        assertEquals(bars, indicator.value(0, 0), 0.0);
+        assertEquals(bars, indicator.calculated.size());
+        // Cada registro foi calculado uma única vez, nenhuma alteração do TimeSeries foi perdida
+        assertEquals(bars, indicator.calls.size());
+    }
+}
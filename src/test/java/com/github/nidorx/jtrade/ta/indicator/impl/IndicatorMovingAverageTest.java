@@ -0,0 +1,192 @@
+package com.github.nidorx.jtrade.ta.indicator.impl;
+
+import com.github.nidorx.jtrade.core.AppliedPrice;
+import com.github.nidorx.jtrade.core.Rate;
+import com.github.nidorx.jtrade.core.TimeFrame;
+import com.github.nidorx.jtrade.core.impl.RetentionPolicy;
+import com.github.nidorx.jtrade.core.impl.TimeSeriesRateImpl;
+import com.github.nidorx.jtrade.ta.indicator.IndicatorOutput;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Alex Rodin <contato@alexrodin.info>
+ */
+public class IndicatorMovingAverageTest {
+
+    private static final Instant NOW = Instant.ofEpochSecond(1514854620);
+
+    private static Rate rate(int minute, double close) {
+        return new Rate("EURUSD", NOW.plusSeconds(minute * 60), close, close, close, close, 1, 0, 0, TimeFrame.M1);
+    }
+
+    /**
+     * Compara com o cálculo completo do período, para cada registro
+     */
+    private static void assertNaive(TimeSeriesRateImpl ts, Map<Instant, IndicatorOutput> output, int period,
+            IndicatorMovingAverage.METHOD method) {
+        assertEquals(ts.size(), output.size());
+        final List<Instant> instants = ts.time(ts.size());
+        double smma = 0;
+        double ema = 0;
+        final double exponent = 2.0 / (period + 1);
+        for (int i = instants.size() - 1, bar = 0; i >= 0; i--, bar++) {
+            final Instant instant = instants.get(i);
+            final List<Rate> rates = ts.list(instant, period);
+            double sum = 0;
+            double weighted = 0;
+            double weights = 0;
+            for (int k = 0; k < rates.size(); k++) {
+                sum += rates.get(k).close;
+                weighted += (rates.size() - k) * rates.get(k).close;
+                weights += rates.size() - k;
+            }
+
+            final double expected;
+            if (method == IndicatorMovingAverage.METHOD.LWMA) {
+                expected = weighted / weights;
+            } else if (method == IndicatorMovingAverage.METHOD.SMMA && bar >= period) {
+                expected = (smma * (period - 1) + rates.get(0).close) / period;
+            } else if (method == IndicatorMovingAverage.METHOD.EMA) {
+                ema = bar == 0 ? rates.get(0).close : rates.get(0).close * exponent + ema * (1 - exponent);
+                expected = ema;
+            } else {
+                expected = sum / rates.size();
+            }
+            smma = expected;
+            assertEquals(expected, output.get(instant).value, 1e-9);
+        }
+    }
+
+    @Test
+    public void testCalculateSMA() {
+        final TimeSeriesRateImpl ts = new TimeSeriesRateImpl();
+        final IndicatorMovingAverage sma = new IndicatorMovingAverage(3, IndicatorMovingAverage.METHOD.SMA,
+                AppliedPrice.CLOSE);
+        sma.appendTo(ts);
+
+        final double[] values = {1, 2, 3, 4, 3, 4, 5, 4, 3, 3, 4, 3, 2};
+        final double[] expecteds = {1, 1.5, 2, 3, 10.0 / 3, 11.0 / 3, 4, 13.0 / 3, 4, 10.0 / 3, 10.0 / 3, 10.0 / 3, 3};
+        for (int i = 0; i < values.length; i++) {
+            ts.add(rate(i, values[i]));
+            assertEquals(expecteds[i], sma.getOutput().get(0).get(NOW.plusSeconds(i * 60)).value, 1e-12);
+        }
+    }
+
+    @Test
+    public void testReplacedBarAfterNewBar() {
+        final TimeSeriesRateImpl ts = new TimeSeriesRateImpl();
+        final IndicatorMovingAverage sma = new IndicatorMovingAverage(2, IndicatorMovingAverage.METHOD.SMA,
+                AppliedPrice.CLOSE);
+        sma.appendTo(ts);
+        ts.add(rate(0, 1));
+        ts.add(rate(1, 2));
+        assertEquals(1.5, sma.value(0, 0), 1e-12);
+
+        // O candle em formação é substituído e as estratégias leem apenas uma vez por candle
+        ts.update(rate(1, 10));
+        ts.add(rate(2, 3));
+        ts.update(rate(2, 4));
+
+        assertEquals(7.0, sma.value(0, 0), 1e-12);
+        assertEquals(5.5, sma.value(0, 1), 1e-12);
+        assertNaive(ts, sma.getOutput().get(0), 2, IndicatorMovingAverage.METHOD.SMA);
+    }
+
+    @Test
+    public void testCalculateSMMAAndLWMA() {
+        final TimeSeriesRateImpl ts = new TimeSeriesRateImpl();
+        final IndicatorMovingAverage smma = new IndicatorMovingAverage(3, IndicatorMovingAverage.METHOD.SMMA);
+        final IndicatorMovingAverage lwma = new IndicatorMovingAverage(3, IndicatorMovingAverage.METHOD.LWMA);
+        smma.appendTo(ts);
+        lwma.appendTo(ts);
+
+        final double[] values = {1, 2, 3, 4, 3};
+        for (int i = 0; i < values.length; i++) {
+            ts.add(rate(i, values[i]));
+        }
+
+        // SMMA: SMA do período no terceiro registro, suavizado a partir de então
+        final Map<Instant, IndicatorOutput> smmaOut = smma.getOutput().get(0);
+        assertEquals(2.0, smmaOut.get(NOW.plusSeconds(120)).value, 1e-12);
+        assertEquals(8.0 / 3, smmaOut.get(NOW.plusSeconds(180)).value, 1e-12);
+        assertEquals((16.0 / 3 + 3) / 3, smmaOut.get(NOW.plusSeconds(240)).value, 1e-12);
+
+        // LWMA: (3 * p0 + 2 * p1 + 1 * p2) / 6
+        final Map<Instant, IndicatorOutput> lwmaOut = lwma.getOutput().get(0);
+        assertEquals(5.0 / 3, lwmaOut.get(NOW.plusSeconds(60)).value, 1e-12);
+        assertEquals(14.0 / 6, lwmaOut.get(NOW.plusSeconds(120)).value, 1e-12);
+        assertEquals(20.0 / 6, lwmaOut.get(NOW.plusSeconds(180)).value, 1e-12);
+        assertEquals(20.0 / 6, lwmaOut.get(NOW.plusSeconds(240)).value, 1e-12);
+    }
+
+    @Test
+    public void testSMMAWithRetentionBelowPeriod() {
+        final TimeSeriesRateImpl ts = new TimeSeriesRateImpl(TimeSeriesRateImpl.STORAGE.COLUMNAR,
+                RetentionPolicy.ofCount(3));
+        final IndicatorMovingAverage smma = new IndicatorMovingAverage(5, IndicatorMovingAverage.METHOD.SMMA);
+        smma.appendTo(ts);
+
+        final Random random = new Random(11);
+        final double[] prices = new double[40];
+        double expected = 0;
+        for (int i = 0; i < prices.length; i++) {
+            prices[i] = 1 + random.nextDouble();
+            ts.add(rate(i, prices[i]));
+
+            if (i < 5) {
+                // SMA dos registros disponíveis até completar o período
+                double sum = 0;
+                for (int k = 0; k <= i; k++) {
+                    sum += prices[k];
+                }
+                expected = sum / (i + 1);
+            } else {
+                expected = (expected * 4 + prices[i]) / 5;
+            }
+            assertEquals(expected, smma.value(0, 0), 1e-9);
+        }
+    }
+
+    @Test
+    public void testStreamingMatchesNaiveSum() {
+        for (IndicatorMovingAverage.METHOD method : new IndicatorMovingAverage.METHOD[]{
+            IndicatorMovingAverage.METHOD.SMA, IndicatorMovingAverage.METHOD.EMA, IndicatorMovingAverage.METHOD.SMMA,
+            IndicatorMovingAverage.METHOD.LWMA
+        }) {
+            assertStreaming(method);
+        }
+    }
+
+    private static void assertStreaming(IndicatorMovingAverage.METHOD method) {
+        final Random random = new Random(7);
+        final TimeSeriesRateImpl ts = new TimeSeriesRateImpl();
+        final IndicatorMovingAverage ma = new IndicatorMovingAverage(20, method, AppliedPrice.CLOSE);
+        ma.appendTo(ts);
+
+        // Lacunas nos minutos múltiplos de 7, preenchidas depois
+        for (int minute = 0; minute < 500; minute++) {
+            if (minute % 7 != 0) {
+                ts.add(rate(minute, 1 + random.nextDouble()));
+                if (minute % 50 == 0) {
+                    ma.getOutput();
+                }
+            }
+        }
+        assertNaive(ts, ma.getOutput().get(0), 20, method);
+
+        // Substituição do registro mais recente
+        ts.update(rate(499, 5));
+        assertNaive(ts, ma.getOutput().get(0), 20, method);
+
+        for (int minute = 420; minute < 500; minute += 7) {
+            ts.add(rate(minute, 1 + random.nextDouble()));
+        }
+        assertNaive(ts, ma.getOutput().get(0), 20, method);
+    }
+}
@@ -0,0 +1,105 @@
+package com.github.nidorx.jtrade.ta.rolling;
+
+import com.github.nidorx.jtrade.core.AppliedPrice;
+import com.github.nidorx.jtrade.core.Rate;
+import com.github.nidorx.jtrade.core.TimeFrame;
+import com.github.nidorx.jtrade.core.impl.TimeSeriesRateImpl;
+import com.github.nidorx.jtrade.ta.indicator.IndicatorBuffer;
+import com.github.nidorx.jtrade.util.function.Cancelable;
+import java.time.Instant;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Alex Rodin <contato@alexrodin.info>
+ */
+public class RollingTest {
+
+    private static final Instant NOW = Instant.ofEpochSecond(1514854620);
+
+    @Test
+    public void testMatchesFullRecalculation() {
+        final int period = 20;
+        final RollingMax max = new RollingMax(period);
+        final RollingMin min = new RollingMin(period);
+        final RollingVariance variance = new RollingVariance(period);
+        final RollingCovariance covariance = new RollingCovariance(period);
+
+        final Random random = new Random(3);
+        final double[] xs = new double[500];
+        final double[] ys = new double[500];
+        for (int i = 0; i < xs.length; i++) {
+            xs[i] = random.nextInt(100);
+            ys[i] = xs[i] * 0.5 + random.nextGaussian();
+            max.add(xs[i]);
+            min.add(xs[i]);
+            variance.add(xs[i]);
+            covariance.add(xs[i], ys[i]);
+
+            if (i % 3 == 0) {
+                // Candle em formação
+                xs[i] = random.nextInt(100);
+                ys[i] = xs[i] * 0.5 + random.nextGaussian();
+                max.update(xs[i]);
+                min.update(xs[i]);
+                variance.update(xs[i]);
+                covariance.update(xs[i], ys[i]);
+            }
+
+            final int from = Math.max(0, i - period + 1);
+            final int n = i - from + 1;
+            double hi = Double.NEGATIVE_INFINITY, lo = Double.POSITIVE_INFINITY, mx = 0, my = 0;
+            for (int j = from; j <= i; j++) {
+                hi = Math.max(hi, xs[j]);
+                lo = Math.min(lo, xs[j]);
+                mx += xs[j] / n;
+                my += ys[j] / n;
+            }
+            double m2 = 0, c = 0;
+            for (int j = from; j <= i; j++) {
+                m2 += (xs[j] - mx) * (xs[j] - mx);
+                c += (xs[j] - mx) * (ys[j] - my);
+            }
+
+            assertEquals(n, max.count());
+            assertEquals(hi, max.value(), 0.0);
+            assertEquals(lo, min.value(), 0.0);
+            assertEquals(mx, variance.mean(), 1e-9);
+            assertEquals(m2 / n, variance.variance(), 1e-6);
+            assertEquals(c / n, covariance.covariance(), 1e-6);
+        }
+        assertTrue(max.isReady());
+        assertTrue(covariance.correlation() > 0.9);
+    }
+
+    @Test
+    public void testAttachToTimeSeriesAndBuffer() {
+        final TimeSeriesRateImpl ts = new TimeSeriesRateImpl();
+        for (int minute = 0; minute < 10; minute++) {
+            ts.add(new Rate("EURUSD", NOW.plusSeconds(minute * 60), minute, minute, minute, minute, 1, 0, 0, TimeFrame.M1));
+        }
+
+        final RollingMax max = new RollingMax(3);
+        final Cancelable cancel = max.attach(ts, AppliedPrice.CLOSE);
+        assertEquals(9.0, max.value(), 0.0);
+
+        ts.update(new Rate("EURUSD", NOW.plusSeconds(9 * 60), 0, 0, 0, 0, 1, 0, 0, TimeFrame.M1));
+        assertEquals(8.0, max.value(), 0.0);
+
+        ts.add(new Rate("EURUSD", NOW.plusSeconds(10 * 60), 1, 1, 1, 1, 1, 0, 0, TimeFrame.M1));
+        ts.add(new Rate("EURUSD", NOW.plusSeconds(11 * 60), 2, 2, 2, 2, 1, 0, 0, TimeFrame.M1));
+        assertEquals(2.0, max.value(), 0.0);
+        cancel.cancel();
+
+        final IndicatorBuffer buffer = new IndicatorBuffer();
+        final RollingVariance variance = new RollingVariance(2);
+        variance.attach(buffer);
+        buffer.value(NOW, 1.0);
+        buffer.value(NOW.plusSeconds(60), 5.0);
+        buffer.value(NOW.plusSeconds(60), 3.0);
+        assertEquals(2.0, variance.mean(), 0.0);
+        assertEquals(1.0, variance.variance(), 1e-12);
+    }
+}